@@ -0,0 +1,78 @@
+package dev.scastillo.feature_flags.benchmark;
+
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allow-list targeting ($in over user ids, as GrowthBook inlines saved groups): the SDK scans
+ * the list on every call, the compiled engine looks it up in an index built once per snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConditionIndexBenchmark {
+
+    @Param({"100", "100000"})
+    int listSize;
+
+    @Param({"SDK", "COMPILED"})
+    GrowthBookProperties.Engine engine;
+
+    private GrowthBookClient client;
+    private Map<String, Object> member;
+    private Map<String, Object> nonMember;
+
+    @Setup
+    public void setUp() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(engine);
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < listSize; i++) {
+            ids.append(i > 0 ? "," : "").append('"').append("user-").append(i * 2).append('"');
+        }
+        String featuresJson = "{\"beta\":{\"defaultValue\":false,\"rules\":[{\"id\":\"fr_beta\","
+                + "\"condition\":{\"id\":{\"$in\":[" + ids + "]}},\"force\":true}]}}";
+
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder(featuresJson, properties);
+        client = new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder,
+                new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { }));
+        member = SyntheticFeatures.attributes(listSize);
+        nonMember = SyntheticFeatures.attributes(listSize * 2 + 1);
+    }
+
+    @Benchmark
+    public boolean member() {
+        return client.isFeatureEnabledForUser("beta", member);
+    }
+
+    /**
+     * Worst case for a scan: the whole list is compared
+     */
+    @Benchmark
+    public boolean nonMember() {
+        return client.isFeatureEnabledForUser("beta", nonMember);
+    }
+}
@@ -0,0 +1,96 @@
+package dev.scastillo.feature_flags.benchmark;
+
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureCipher;
+import dev.scastillo.feature_flags.snapshot.FeaturePayload;
+import dev.scastillo.feature_flags.snapshot.FeaturePayloadLoader;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plain vs encrypted payloads: decryption is paid once when the payload is loaded,
+ * per-user evaluation against the resulting snapshot should cost the same.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncryptedFeaturesBenchmark {
+
+    private static final String KEY = Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+
+    @Param({"1000"})
+    int features;
+
+    @Param({"false", "true"})
+    boolean encrypted;
+
+    @Param({"SDK", "COMPILED"})
+    GrowthBookProperties.Engine engine;
+
+    private byte[] apiResponse;
+    private FeatureCipher cipher;
+    private GrowthBookClient client;
+    private String featureKey;
+    private Map<String, Object> attributes;
+
+    @Setup
+    public void setUp() throws IOException {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(engine);
+        String featuresJson = SyntheticFeatures.featuresJson(features);
+        if (encrypted) {
+            properties.setDecryptionKey(KEY);
+            cipher = FeatureCipher.forKey(KEY);
+            apiResponse = ("{\"status\":200,\"features\":{},\"encryptedFeatures\":\"" + cipher.encrypt(featuresJson) + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+        } else {
+            apiResponse = SyntheticFeatures.apiResponse(features);
+        }
+
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder("{}", properties);
+        snapshotHolder.update(loadPayload(), null, null);
+        client = new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder,
+                new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { }));
+        featureKey = SyntheticFeatures.featureKey(features / 2 + 1);
+        attributes = SyntheticFeatures.attributes(42);
+    }
+
+    /**
+     * Refresh-time cost, decryption included when the payload is encrypted
+     */
+    @Benchmark
+    public FeaturePayload loadPayload() throws IOException {
+        return FeaturePayloadLoader.load(new ByteArrayInputStream(apiResponse), cipher);
+    }
+
+    @Benchmark
+    public boolean isFeatureEnabledForUser() {
+        return client.isFeatureEnabledForUser(featureKey, attributes);
+    }
+}
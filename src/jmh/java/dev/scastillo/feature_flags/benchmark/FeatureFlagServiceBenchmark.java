@@ -0,0 +1,120 @@
+package dev.scastillo.feature_flags.benchmark;
+
+import dev.scastillo.feature_flags.cache.BootstrapPayloadCache;
+import dev.scastillo.feature_flags.cache.EvaluationCache;
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.dto.request.FeatureEvaluationRequest;
+import dev.scastillo.feature_flags.dto.response.FeatureResponse;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.scheduler.RefreshCoordinator;
+import dev.scastillo.feature_flags.service.FeatureFlagService;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.snapshot.SharedSnapshot;
+import dev.scastillo.feature_flags.tenant.TenantRegistry;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * {@link FeatureFlagService} per-user evaluation, with the evaluation cache hit (same user)
+ * and missed (a different user every call), and bulk evaluation reported per user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureFlagServiceBenchmark {
+
+    private static final int BULK_USERS = 10_000;
+
+    @Param({"10", "1000", "10000"})
+    int features;
+
+    @Param({"SDK", "COMPILED"})
+    GrowthBookProperties.Engine engine;
+
+    private FeatureFlagService service;
+    private RefreshCoordinator refreshCoordinator;
+    private String featureKey;
+    private List<String> bulkKeys;
+    private FeatureEvaluationRequest sameUser;
+    private int nextUser;
+
+    @Setup
+    public void setUp() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(engine);
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder(SyntheticFeatures.featuresJson(features), properties);
+        FeatureFlagMetrics metrics = new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties);
+        ExposureTracker exposureTracker = new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { });
+        GrowthBookClient client = new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder, metrics, exposureTracker);
+        refreshCoordinator = new RefreshCoordinator(client, properties, new SharedSnapshot(properties, snapshotHolder));
+        service = new FeatureFlagService(client, new EvaluationCache(properties, snapshotHolder), refreshCoordinator, metrics,
+                new TenantRegistry(properties, HttpClient.newHttpClient(), metrics, exposureTracker),
+                new BootstrapPayloadCache(properties));
+        featureKey = SyntheticFeatures.featureKey(features / 2);
+        bulkKeys = List.of(SyntheticFeatures.featureKey(0), featureKey, SyntheticFeatures.featureKey(features - 1));
+        sameUser = user(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        refreshCoordinator.shutdown();
+    }
+
+    @Benchmark
+    public FeatureResponse evaluateFeatureCached() {
+        return service.evaluateFeature(featureKey, sameUser);
+    }
+
+    @Benchmark
+    public FeatureResponse evaluateFeatureUncached() {
+        return service.evaluateFeature(featureKey, user(nextUser++));
+    }
+
+    /**
+     * Time per user of a bulk run over three features: evaluations per second per core is
+     * 3 / score / cores
+     */
+    @Benchmark
+    @OperationsPerInvocation(BULK_USERS)
+    public long evaluateBulk() {
+        return service.evaluateBulk(IntStream.range(0, BULK_USERS).mapToObj(FeatureFlagServiceBenchmark::user).iterator(),
+                bulkKeys, result -> { });
+    }
+
+    @Benchmark
+    public byte[] bootstrapPayload() {
+        return service.getBootstrapPayload(List.of()).getGzip();
+    }
+
+    private static FeatureEvaluationRequest user(int index) {
+        FeatureEvaluationRequest request = new FeatureEvaluationRequest();
+        request.setUserId("user-" + index);
+        request.setCountry(index % 2 == 0 ? "CO" : "US");
+        request.setBrowser("chrome");
+        request.setDeviceType("mobile");
+        return request;
+    }
+}
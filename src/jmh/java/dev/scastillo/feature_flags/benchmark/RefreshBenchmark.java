@@ -0,0 +1,77 @@
+package dev.scastillo.feature_flags.benchmark;
+
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.snapshot.FeaturePayload;
+import dev.scastillo.feature_flags.snapshot.FeaturePayloadLoader;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh path without the network: loading the downloaded payload, and publishing it as a new snapshot.
+ * {@link #treeRoundTrip()} is how the payload used to be loaded; run with {@code -prof gc} to compare
+ * what each load allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RefreshBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int features;
+
+    @Param({"SDK", "COMPILED"})
+    GrowthBookProperties.Engine engine;
+
+    private byte[] apiResponse;
+    private FeaturePayload payload;
+    private FeatureSnapshotHolder snapshotHolder;
+
+    @Setup
+    public void setUp() throws IOException {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(engine);
+        apiResponse = SyntheticFeatures.apiResponse(features);
+        payload = FeaturePayloadLoader.load(new ByteArrayInputStream(apiResponse));
+        snapshotHolder = new FeatureSnapshotHolder("{}", properties);
+    }
+
+    @Benchmark
+    public FeaturePayload loadPayload() throws IOException {
+        return FeaturePayloadLoader.load(new ByteArrayInputStream(apiResponse));
+    }
+
+    /**
+     * Body as a String, full tree, the features subtree back to text and parsed again for its keys
+     */
+    @Benchmark
+    public int treeRoundTrip() {
+        String text = new String(apiResponse, StandardCharsets.UTF_8);
+        String featuresJson = JsonParser.parseString(text).getAsJsonObject().get("features").toString();
+        return JsonParser.parseString(featuresJson).getAsJsonObject().size();
+    }
+
+    @Benchmark
+    public FeatureSnapshot publishSnapshot() {
+        return snapshotHolder.update(payload, null, null);
+    }
+}
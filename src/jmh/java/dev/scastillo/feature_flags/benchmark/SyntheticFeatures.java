@@ -0,0 +1,66 @@
+package dev.scastillo.feature_flags.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Synthetic GrowthBook payloads for benchmarks. Every feature has a targeting rule
+ * (condition), a partial rollout and an experiment; every third one serves a JSON object.
+ */
+public final class SyntheticFeatures {
+
+    private static final String[] COUNTRIES = {"CO", "MX", "US", "ES", "AR"};
+
+    private SyntheticFeatures() {
+    }
+
+    public static String featureKey(int index) {
+        return "feature-" + index;
+    }
+
+    /**
+     * The features object, as stored in a snapshot
+     */
+    public static String featuresJson(int features) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < features; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String value = i % 3 == 0
+                    ? "{\"limit\":" + i + ",\"label\":\"tier-" + (i % 5) + "\"}"
+                    : "true";
+            String off = i % 3 == 0 ? "{\"limit\":0,\"label\":\"off\"}" : "false";
+            json.append('"').append(featureKey(i)).append("\":{\"defaultValue\":").append(off).append(",\"rules\":[")
+                    .append("{\"id\":\"fr_t").append(i).append("\",\"condition\":{\"country\":{\"$in\":[\"")
+                    .append(COUNTRIES[i % COUNTRIES.length]).append("\",\"")
+                    .append(COUNTRIES[(i + 1) % COUNTRIES.length]).append("\"]},\"browser\":{\"$ne\":\"ie\"}},")
+                    .append("\"force\":").append(value).append("},")
+                    .append("{\"id\":\"fr_r").append(i).append("\",\"coverage\":0.3,\"hashAttribute\":\"id\",")
+                    .append("\"force\":").append(value).append("},")
+                    .append("{\"id\":\"fr_e").append(i).append("\",\"key\":\"exp-").append(i)
+                    .append("\",\"variations\":[").append(off).append(',').append(value)
+                    .append("],\"weights\":[0.5,0.5],\"coverage\":1,\"hashAttribute\":\"id\",")
+                    .append("\"meta\":[{\"key\":\"0\"},{\"key\":\"1\"}],\"phase\":\"0\"}]}");
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * A full API response wrapping the features, as downloaded on refresh
+     */
+    public static byte[] apiResponse(int features) {
+        return ("{\"status\":200,\"features\":" + featuresJson(features) + ",\"dateUpdated\":\"2024-01-01T00:00:00Z\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static Map<String, Object> attributes(int user) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("id", "user-" + user);
+        attributes.put("country", COUNTRIES[user % COUNTRIES.length]);
+        attributes.put("browser", user % 2 == 0 ? "chrome" : "firefox");
+        attributes.put("deviceType", "mobile");
+        return attributes;
+    }
+}
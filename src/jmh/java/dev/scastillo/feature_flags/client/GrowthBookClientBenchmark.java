@@ -0,0 +1,86 @@
+package dev.scastillo.feature_flags.client;
+
+import com.google.gson.JsonElement;
+import dev.scastillo.feature_flags.benchmark.SyntheticFeatures;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation hot paths of {@link GrowthBookClient}, for both engines and several payload sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrowthBookClientBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int features;
+
+    @Param({"SDK", "COMPILED"})
+    GrowthBookProperties.Engine engine;
+
+    private GrowthBookClient client;
+    private String booleanKey;
+    private String objectKey;
+    private Map<String, Object> attributes;
+
+    @Setup
+    public void setUp() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(engine);
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder(SyntheticFeatures.featuresJson(features), properties);
+        client = new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder,
+                new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { }));
+        int middle = features / 2;
+        booleanKey = SyntheticFeatures.featureKey(middle % 3 == 0 ? middle + 1 : middle);
+        objectKey = SyntheticFeatures.featureKey(features / 3 * 3);
+        attributes = SyntheticFeatures.attributes(42);
+    }
+
+    @Benchmark
+    public boolean isFeatureEnabled() {
+        return client.isFeatureEnabled(booleanKey);
+    }
+
+    @Benchmark
+    public JsonElement getFeatureValueRaw() {
+        return client.getFeatureValueRaw(objectKey);
+    }
+
+    @Benchmark
+    public FeatureEvaluation evaluate() {
+        return client.evaluate(client.currentSnapshot(), objectKey);
+    }
+
+    @Benchmark
+    public boolean isFeatureEnabledForUser() {
+        return client.isFeatureEnabledForUser(booleanKey, attributes);
+    }
+
+    @Benchmark
+    public String mapToJson() {
+        return client.mapToJson(attributes);
+    }
+}
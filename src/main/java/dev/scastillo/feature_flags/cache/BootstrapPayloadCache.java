@@ -0,0 +1,181 @@
+package dev.scastillo.feature_flags.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.snapshot.FeatureCipher;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized and gzip-compressed features payloads for client SDK bootstrap.
+ * Each payload is built once per snapshot version and set of feature keys, so serving it only
+ * copies bytes. Snapshot versions are unique across tenants and never reused; payloads of
+ * replaced snapshots are simply no longer asked for and age out.
+ * For SDK connections with encryption the features are served encrypted again, as GrowthBook does.
+ */
+@Slf4j
+@Component
+public class BootstrapPayloadCache {
+
+    private final Cache<Key, BootstrapPayload> cache;
+
+    public BootstrapPayloadCache(GrowthBookProperties properties) {
+        GrowthBookProperties.Bootstrap config = properties.getBootstrap();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxWeightBytes())
+                .weigher((Key key, BootstrapPayload payload) -> payload.weight())
+                .expireAfterAccess(Duration.ofSeconds(config.getIdleSeconds()))
+                .build();
+    }
+
+    /**
+     * Get the payload for the given feature keys (all features when empty), building it at most once per snapshot.
+     */
+    public BootstrapPayload get(FeatureSnapshot snapshot, List<String> featureKeys) {
+        return get(snapshot, featureKeys, null);
+    }
+
+    /**
+     * Same, re-encrypted with the cipher of an SDK connection that serves encrypted features
+     */
+    public BootstrapPayload get(FeatureSnapshot snapshot, List<String> featureKeys, FeatureCipher cipher) {
+        Key key = new Key(snapshot.getVersion(), selectedKeys(snapshot, featureKeys));
+        return cache.get(key, k -> build(snapshot, k.getFeatureKeys(), cipher));
+    }
+
+    /**
+     * The requested keys the snapshot has, sorted, so unknown keys and their order do not make new
+     * payloads; null for all features, also when every feature was requested.
+     */
+    static List<String> selectedKeys(FeatureSnapshot snapshot, List<String> featureKeys) {
+        if (featureKeys == null || featureKeys.isEmpty()) {
+            return null;
+        }
+        TreeSet<String> selected = new TreeSet<>(featureKeys);
+        selected.retainAll(snapshot.getFeatureKeys());
+        return selected.size() == snapshot.getFeatureKeys().size() ? null : List.copyOf(selected);
+    }
+
+    static BootstrapPayload build(FeatureSnapshot snapshot, List<String> featureKeys, FeatureCipher cipher) {
+        String features;
+        int count;
+        if (featureKeys == null) {
+            // The snapshot already holds the payload text as fetched: no re-encoding
+            features = snapshot.getFeaturesJson();
+            count = snapshot.getFeatureKeys().size();
+        } else {
+            JsonObject all = JsonParser.parseString(snapshot.getFeaturesJson()).getAsJsonObject();
+            JsonObject selected = new JsonObject();
+            for (String featureKey : featureKeys) {
+                selected.add(featureKey, all.get(featureKey));
+            }
+            features = selected.toString();
+            count = selected.size();
+        }
+
+        // Same shape as the GrowthBook features API, so SDKs can load it as is
+        byte[] plain = ("{\"status\":200,\"features\":" + features + "}").getBytes(StandardCharsets.UTF_8);
+        // Hashed before encryption: a fresh IV must not change the ETag of the same features
+        String etag = "\"" + sha256(plain) + "\"";
+        byte[] json = cipher == null ? plain
+                : ("{\"status\":200,\"features\":{},\"encryptedFeatures\":\"" + cipher.encrypt(features) + "\"}")
+                        .getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = gzip(json);
+        log.debug("Bootstrap payload built for snapshot v{} ({} features, {} bytes, {} gzipped)",
+                snapshot.getVersion(), count, json.length, gzip.length);
+        return new BootstrapPayload(snapshot.getVersion(), count, etag, json, gzip);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        // Compressed once per snapshot, served many times: spend the CPU on the smallest output
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192) {{
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }}) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new FeatureFlagException("Error compressing bootstrap payload", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    @Value
+    static class Key {
+        long snapshotVersion;
+        /** Null for all features */
+        List<String> featureKeys;
+    }
+
+    /**
+     * Encoded payload. The ETag is derived from the content, so it survives refreshes and
+     * restarts that produce the same features.
+     */
+    @Value
+    public static class BootstrapPayload {
+
+        long snapshotVersion;
+        int featureCount;
+        String etag;
+        byte[] json;
+        byte[] gzip;
+
+        int weight() {
+            return 64 + json.length + gzip.length;
+        }
+
+        /**
+         * True when the If-None-Match header names this payload (either encoding, weak or strong)
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+                return false;
+            }
+            String opaque = etag.substring(1, etag.length() - 1);
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*")) {
+                    return true;
+                }
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                tag = tag.replace("\"", "");
+                if (tag.equals(opaque) || tag.equals(opaque + "-gzip")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String gzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+    }
+}
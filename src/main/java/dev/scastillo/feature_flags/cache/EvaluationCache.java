@@ -0,0 +1,109 @@
+package dev.scastillo.feature_flags.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.dto.response.EvaluationCacheStatsResponse;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of evaluation results in front of {@link dev.scastillo.feature_flags.service.FeatureFlagService}.
+ * Entries are keyed on feature key, the user attributes and the snapshot version, and the
+ * whole cache is dropped whenever a new snapshot is published. Eviction is by approximate
+ * size in bytes, so a few users with very large attribute maps can't crowd out everyone else.
+ */
+@Slf4j
+@Component
+public class EvaluationCache {
+
+    private final Cache<Key, Object> cache;
+
+    public EvaluationCache(GrowthBookProperties properties, FeatureSnapshotHolder snapshotHolder) {
+        GrowthBookProperties.EvaluationCache config = properties.getEvaluationCache();
+        if (!config.isEnabled()) {
+            this.cache = null;
+            log.info("Evaluation cache disabled");
+            return;
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaxWeightBytes())
+                .weigher((Key key, Object value) -> key.weight())
+                .expireAfterWrite(Duration.ofSeconds(config.getTtlSeconds()))
+                .recordStats()
+                .build();
+        snapshotHolder.addListener((previous, current) -> cache.invalidateAll());
+        log.info("Evaluation cache enabled (max {} bytes, ttl {}s)", config.getMaxWeightBytes(), config.getTtlSeconds());
+    }
+
+    /**
+     * Returns the cached value for the key, computing it at most once per key when absent.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Supplier<T> loader) {
+        if (cache == null) {
+            return loader.get();
+        }
+        return (T) cache.get(key, k -> loader.get());
+    }
+
+    public EvaluationCacheStatsResponse getStats() {
+        if (cache == null) {
+            return EvaluationCacheStatsResponse.builder().enabled(false).build();
+        }
+        CacheStats stats = cache.stats();
+        return EvaluationCacheStatsResponse.builder()
+                .enabled(true)
+                .size(cache.estimatedSize())
+                .hits(stats.hitCount())
+                .misses(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictions(stats.evictionCount())
+                .evictionWeight(stats.evictionWeight())
+                .build();
+    }
+
+    /**
+     * Cache key. {@code variant} separates the different lookups on the same feature
+     * (on/off, or a typed value with its default); attributes are compared by content,
+     * so the order they were sent in does not matter.
+     */
+    @Value
+    public static class Key {
+
+        private static final int ENTRY_OVERHEAD = 48;
+
+        String featureKey;
+        Object variant;
+        Map<String, Object> attributes;
+        long snapshotVersion;
+
+        int weight() {
+            int weight = ENTRY_OVERHEAD + featureKey.length() * 2 + weigh(variant);
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                weight += ENTRY_OVERHEAD + entry.getKey().length() * 2 + weigh(entry.getValue());
+            }
+            return weight;
+        }
+
+        private static int weigh(Object value) {
+            if (value instanceof CharSequence text) {
+                return 40 + text.length() * 2;
+            }
+            if (value instanceof Map<?, ?> map) {
+                return 64 + map.size() * 64;
+            }
+            if (value instanceof Iterable<?>) {
+                return 128;
+            }
+            return 16;
+        }
+    }
+}
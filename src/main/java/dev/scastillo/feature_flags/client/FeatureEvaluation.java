@@ -0,0 +1,26 @@
+package dev.scastillo.feature_flags.client;
+
+import lombok.Value;
+
+/**
+ * Everything one evaluation of a feature produced, from either engine.
+ */
+@Value
+public class FeatureEvaluation {
+
+    /**
+     * Plain Java value (null, Boolean, Number, String, List or Map), serialized as-is by Jackson
+     */
+    Object value;
+    boolean on;
+    /**
+     * defaultValue, force, experiment or unknownFeature
+     */
+    String source;
+    String ruleId;
+    String experimentKey;
+    /**
+     * Assigned variation, or null when the value did not come from an experiment
+     */
+    Integer variationId;
+}
@@ -1,19 +1,36 @@
 package dev.scastillo.feature_flags.client;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.engine.CompiledFeatures;
+import dev.scastillo.feature_flags.engine.EvaluationResult;
+import dev.scastillo.feature_flags.engine.JsValues;
 import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureCipher;
+import dev.scastillo.feature_flags.snapshot.FeaturePayload;
+import dev.scastillo.feature_flags.snapshot.FeaturePayloadLoader;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import growthbook.sdk.java.FeatureResult;
 import growthbook.sdk.java.GBContext;
 import growthbook.sdk.java.GrowthBook;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Slf4j
@@ -21,17 +38,38 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class GrowthBookClient {
 
-    private final GrowthBook growthBook;
+    private static final Gson GSON = new Gson();
+
     private final GrowthBookProperties properties;
     private final HttpClient httpClient;
+    private final FeatureSnapshotHolder snapshotHolder;
+    private final FeatureFlagMetrics metrics;
+    private final ExposureTracker exposureTracker;
+    private final RefreshStats refreshStats = new RefreshStats();
+    /**
+     * Decrypts encrypted payloads on refresh; null when no decryption key is configured
+     */
+    @Getter(lazy = true)
+    private final FeatureCipher cipher = FeatureCipher.forKey(properties.getDecryptionKey());
 
     /**
      * Check if a feature is enabled (on/off)
      */
     public boolean isFeatureEnabled(String featureKey) {
+        return isFeatureEnabled(snapshotHolder.current(), featureKey);
+    }
+
+    /**
+     * Check if a feature is enabled in a given snapshot
+     */
+    public boolean isFeatureEnabled(FeatureSnapshot snapshot, String featureKey) {
         try {
             log.debug("Checking if feature '{}' is enabled", featureKey);
-            return growthBook.isOn(featureKey);
+            CompiledFeatures compiled = snapshot.getCompiledFeatures();
+            if (compiled != null) {
+                return compiled.evaluate(featureKey, Map.of()).isOn();
+            }
+            return snapshot.getGrowthBook().isOn(featureKey);
         } catch (Exception e) {
             log.error("Error checking feature '{}': {}", featureKey, e.getMessage());
             throw new FeatureFlagException("Error checking feature: " + featureKey, e);
@@ -44,9 +82,14 @@ public class GrowthBookClient {
     public String getFeatureValue(String featureKey, String fallback) {
         try {
             log.debug("Getting string value for feature '{}'", featureKey);
-            return growthBook.getFeatureValue(featureKey, fallback);
+            FeatureSnapshot snapshot = snapshotHolder.current();
+            if (snapshot.getCompiledFeatures() != null) {
+                return convertValue(snapshot.getCompiledFeatures().evaluate(featureKey, Map.of()).getValue(), fallback, String.class);
+            }
+            return snapshot.getGrowthBook().getFeatureValue(featureKey, fallback);
         } catch (Exception e) {
             log.error("Error getting feature value '{}': {}", featureKey, e.getMessage());
+            metrics.recordFallback(featureKey);
             return fallback;
         }
     }
@@ -57,9 +100,14 @@ public class GrowthBookClient {
     public Integer getFeatureValueAsInteger(String featureKey, Integer fallback) {
         try {
             log.debug("Getting integer value for feature '{}'", featureKey);
-            return growthBook.getFeatureValue(featureKey, fallback);
+            FeatureSnapshot snapshot = snapshotHolder.current();
+            if (snapshot.getCompiledFeatures() != null) {
+                return convertValue(snapshot.getCompiledFeatures().evaluate(featureKey, Map.of()).getValue(), fallback, Integer.class);
+            }
+            return snapshot.getGrowthBook().getFeatureValue(featureKey, fallback);
         } catch (Exception e) {
             log.error("Error getting feature value '{}': {}", featureKey, e.getMessage());
+            metrics.recordFallback(featureKey);
             return fallback;
         }
     }
@@ -70,9 +118,14 @@ public class GrowthBookClient {
     public Boolean getFeatureValueAsBoolean(String featureKey, Boolean fallback) {
         try {
             log.debug("Getting boolean value for feature '{}'", featureKey);
-            return growthBook.getFeatureValue(featureKey, fallback);
+            FeatureSnapshot snapshot = snapshotHolder.current();
+            if (snapshot.getCompiledFeatures() != null) {
+                return convertValue(snapshot.getCompiledFeatures().evaluate(featureKey, Map.of()).getValue(), fallback, Boolean.class);
+            }
+            return snapshot.getGrowthBook().getFeatureValue(featureKey, fallback);
         } catch (Exception e) {
             log.error("Error getting feature value '{}': {}", featureKey, e.getMessage());
+            metrics.recordFallback(featureKey);
             return fallback;
         }
     }
@@ -83,27 +136,63 @@ public class GrowthBookClient {
     public Double getFeatureValueAsDouble(String featureKey, Double fallback) {
         try {
             log.debug("Getting double value for feature '{}'", featureKey);
-            return growthBook.getFeatureValue(featureKey, fallback);
+            FeatureSnapshot snapshot = snapshotHolder.current();
+            if (snapshot.getCompiledFeatures() != null) {
+                return convertValue(snapshot.getCompiledFeatures().evaluate(featureKey, Map.of()).getValue(), fallback, Double.class);
+            }
+            return snapshot.getGrowthBook().getFeatureValue(featureKey, fallback);
         } catch (Exception e) {
             log.error("Error getting feature value '{}': {}", featureKey, e.getMessage());
+            metrics.recordFallback(featureKey);
             return fallback;
         }
     }
 
+    /**
+     * Evaluate a feature once, returning its value together with the on/off state and the rule behind it
+     */
+    public FeatureEvaluation evaluate(FeatureSnapshot snapshot, String featureKey) {
+        try {
+            log.debug("Evaluating feature '{}'", featureKey);
+            CompiledFeatures compiled = snapshot.getCompiledFeatures();
+            if (compiled != null) {
+                EvaluationResult result = compiled.evaluate(featureKey, Map.of());
+                return new FeatureEvaluation(result.getValue(), result.isOn(), result.getSource().getValue(),
+                        result.getRuleId(), result.getExperimentKey(),
+                        result.getVariationId() >= 0 ? result.getVariationId() : null);
+            }
+            FeatureResult<Object> result = snapshot.getGrowthBook().evalFeature(featureKey, Object.class);
+            Object value = result.getValue() instanceof JsonElement element ? JsValues.toJava(element) : result.getValue();
+            return new FeatureEvaluation(value, JsValues.isTruthy(value),
+                    result.getSource() != null ? result.getSource().toString() : null,
+                    result.getRuleId(),
+                    result.getExperiment() != null ? result.getExperiment().getKey() : null,
+                    result.getExperimentResult() != null ? result.getExperimentResult().getVariationId() : null);
+        } catch (Exception e) {
+            log.error("Error evaluating feature '{}': {}", featureKey, e.getMessage());
+            throw new FeatureFlagException("Error evaluating feature: " + featureKey, e);
+        }
+    }
+
     /**
      * Get raw feature value as JsonElement
      */
     public JsonElement getFeatureValueRaw(String featureKey) {
+        return getFeatureValueRaw(snapshotHolder.current(), featureKey);
+    }
+
+    /**
+     * Get raw feature value from a given snapshot
+     */
+    public JsonElement getFeatureValueRaw(FeatureSnapshot snapshot, String featureKey) {
         try {
             log.debug("Getting raw value for feature '{}'", featureKey);
-            var result = growthBook.evalFeature(featureKey, Object.class);
-            Object value = result.getValue();
-            if (value == null) {
-                return null;
+            if (snapshot.getCompiledFeatures() != null) {
+                Object value = snapshot.getCompiledFeatures().evaluate(featureKey, Map.of()).getValue();
+                return value == null ? null : GSON.toJsonTree(value);
             }
-            return com.google.gson.JsonParser.parseString(
-                new com.google.gson.Gson().toJson(value)
-            );
+            Object value = snapshot.getGrowthBook().evalFeature(featureKey, Object.class).getValue();
+            return value == null ? null : GSON.toJsonTree(value);
         } catch (Exception e) {
             log.error("Error getting raw feature value '{}': {}", featureKey, e.getMessage());
             throw new FeatureFlagException("Error getting raw feature value: " + featureKey, e);
@@ -114,17 +203,25 @@ public class GrowthBookClient {
      * Evaluate feature with custom user attributes
      */
     public boolean isFeatureEnabledForUser(String featureKey, Map<String, Object> userAttributes) {
+        return isFeatureEnabledForUser(snapshotHolder.current(), featureKey, userAttributes);
+    }
+
+    /**
+     * Evaluate feature with custom user attributes against a given snapshot
+     */
+    public boolean isFeatureEnabledForUser(FeatureSnapshot snapshot, String featureKey, Map<String, Object> userAttributes) {
         try {
             log.debug("Evaluating feature '{}' for user with attributes", featureKey);
+            if (snapshot.getCompiledFeatures() != null) {
+                return evaluateTracked(snapshot.getCompiledFeatures(), featureKey, userAttributes).isOn();
+            }
             
-            // Fetch fresh features
-            String featuresJson = fetchFeatures();
-            
-            // Create new context with user attributes
+            // Evaluate against the in-memory snapshot, never the network
             GBContext context = GBContext.builder()
-                    .featuresJson(featuresJson)
+                    .featuresJson(snapshot.getFeaturesJson())
                     .attributesJson(mapToJson(userAttributes))
                     .enabled(properties.isEnabled())
+                    .trackingCallback(exposureTracker)
                     .build();
             
             GrowthBook userGrowthBook = new GrowthBook(context);
@@ -145,15 +242,18 @@ public class GrowthBookClient {
     public <T> T getFeatureValueForUser(String featureKey, T fallback, Class<T> valueType, Map<String, Object> userAttributes) {
         try {
             log.debug("Getting feature value '{}' for user with attributes", featureKey);
+            FeatureSnapshot snapshot = snapshotHolder.current();
+            if (snapshot.getCompiledFeatures() != null) {
+                return convertValue(evaluateTracked(snapshot.getCompiledFeatures(), featureKey, userAttributes).getValue(),
+                        fallback, valueType);
+            }
             
-            // Fetch fresh features
-            String featuresJson = fetchFeatures();
-            
-            // Create new context with user attributes
+            // Evaluate against the in-memory snapshot, never the network
             GBContext context = GBContext.builder()
-                    .featuresJson(featuresJson)
+                    .featuresJson(snapshot.getFeaturesJson())
                     .attributesJson(mapToJson(userAttributes))
                     .enabled(properties.isEnabled())
+                    .trackingCallback(exposureTracker)
                     .build();
             
             GrowthBook userGrowthBook = new GrowthBook(context);
@@ -164,38 +264,195 @@ public class GrowthBookClient {
             return value;
         } catch (Exception e) {
             log.error("Error getting feature value '{}' for user: {}", featureKey, e.getMessage());
+            metrics.recordFallback(featureKey);
             return fallback;
         }
     }
 
     /**
-     * Refresh features from GrowthBook API
+     * Evaluate several features for the same user with a single context.
+     * An empty key collection evaluates every feature in the current snapshot.
+     */
+    public Map<String, Boolean> areFeaturesEnabledForUser(Collection<String> featureKeys, Map<String, Object> userAttributes) {
+        return areFeaturesEnabledForUser(snapshotHolder.current(), featureKeys, userAttributes);
+    }
+
+    /**
+     * Same as {@link #areFeaturesEnabledForUser(Collection, Map)} but pinned to a given snapshot,
+     * so long-running jobs evaluate every user against the same features.
+     */
+    public Map<String, Boolean> areFeaturesEnabledForUser(FeatureSnapshot snapshot, Collection<String> featureKeys,
+                                                          Map<String, Object> userAttributes) {
+        try {
+            Collection<String> keys = featureKeys == null || featureKeys.isEmpty()
+                    ? snapshot.getFeatureKeys()
+                    : featureKeys;
+            log.debug("Evaluating {} features for user with attributes", keys.size());
+
+            CompiledFeatures compiled = snapshot.getCompiledFeatures();
+            if (compiled != null) {
+                Map<String, Boolean> results = new LinkedHashMap<>();
+                for (String featureKey : keys) {
+                    results.put(featureKey, evaluateTracked(compiled, featureKey, userAttributes).isOn());
+                }
+                return results;
+            }
+
+            GBContext context = GBContext.builder()
+                    .featuresJson(snapshot.getFeaturesJson())
+                    .attributesJson(mapToJson(userAttributes))
+                    .enabled(properties.isEnabled())
+                    .trackingCallback(exposureTracker)
+                    .build();
+
+            GrowthBook userGrowthBook = new GrowthBook(context);
+            Map<String, Boolean> results = new LinkedHashMap<>();
+            for (String featureKey : keys) {
+                results.put(featureKey, userGrowthBook.isOn(featureKey));
+            }
+            userGrowthBook.destroy();
+
+            return results;
+        } catch (Exception e) {
+            log.error("Error evaluating features for user: {}", e.getMessage());
+            throw new FeatureFlagException("Error evaluating features for user", e);
+        }
+    }
+
+    /**
+     * Current in-memory features snapshot
+     */
+    public FeatureSnapshot currentSnapshot() {
+        return snapshotHolder.current();
+    }
+
+    /**
+     * Refresh features from GrowthBook API.
+     * Sends the stored ETag / Last-Modified so an unchanged payload costs a 304,
+     * and skips re-parsing when the downloaded body hashes the same.
+     * A changed payload is built into a new snapshot and swapped in atomically.
      */
     public void refreshFeatures() {
+        long start = System.nanoTime();
+        String outcome = "failed";
         try {
             log.info("Refreshing GrowthBook features");
-            String featuresJson = fetchFeatures();
-            growthBook.setFeatures(featuresJson);
-            log.info("Successfully refreshed GrowthBook features");
+            FeatureSnapshot current = snapshotHolder.current();
+            HttpResponse<InputStream> response = fetchFeatures(current);
+
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+            if (response.statusCode() == 304) {
+                response.body().close();
+                // Confirms the snapshot is still current, which resets its age
+                snapshotHolder.updateValidators(etag != null ? etag : current.getEtag(),
+                        lastModified != null ? lastModified : current.getLastModified(), current.getPayloadHash());
+                refreshStats.recordNotModified();
+                outcome = "not_modified";
+                log.info("GrowthBook features not modified, keeping current snapshot");
+                return;
+            }
+
+            FeaturePayload payload = FeaturePayloadLoader.load(response.body(), getCipher());
+            metrics.recordPayloadBytes(payload.getPayloadBytes());
+            if (payload.getPayloadHash().equals(current.getPayloadHash())
+                    || payload.getFeaturesJson().equals(current.getFeaturesJson())) {
+                // Same bytes, or the features a webhook already applied: keep the snapshot, record the validators
+                snapshotHolder.updateValidators(etag, lastModified, payload.getPayloadHash());
+                refreshStats.recordUnchanged();
+                outcome = "unchanged";
+                log.info("GrowthBook features unchanged, keeping snapshot v{}", current.getVersion());
+                return;
+            }
+            if (current.isNewerThan(payload)) {
+                // The API answered with features older than ones a webhook already pushed
+                refreshStats.recordUnchanged();
+                outcome = "stale";
+                log.info("GrowthBook features from {} are older than snapshot v{}, keeping it",
+                        payload.getDateUpdated(), current.getVersion());
+                return;
+            }
+
+            FeatureSnapshot published = snapshotHolder.update(payload, etag, lastModified);
+            refreshStats.recordApplied();
+            outcome = "applied";
+            log.info("Successfully refreshed GrowthBook features (snapshot v{})", published.getVersion());
         } catch (Exception e) {
+            refreshStats.recordFailed();
             log.error("Error refreshing features: {}", e.getMessage());
             throw new FeatureFlagException("Error refreshing features", e);
+        } finally {
+            metrics.recordRefresh(outcome, System.nanoTime() - start);
         }
     }
 
-    private String fetchFeatures() {
+    /**
+     * Applies the features carried by a GrowthBook SDK webhook as the new snapshot, without calling the API.
+     * Returns false when the payload has no features object, so the caller can fall back to a refresh.
+     * A payload updated before the current snapshot's is ignored. Callers go through
+     * {@link dev.scastillo.feature_flags.scheduler.RefreshCoordinator}, so it never races a refresh.
+     */
+    public boolean applyWebhookPayload(byte[] payload) {
+        FeaturePayload features;
         try {
-            HttpRequest request = HttpRequest.newBuilder()
+            features = FeaturePayloadLoader.load(new ByteArrayInputStream(payload), getCipher());
+        } catch (Exception e) {
+            log.warn("Webhook payload is not valid JSON: {}", e.getMessage());
+            return false;
+        }
+        if (!features.isWrapped()) {
+            return false;
+        }
+
+        FeatureSnapshot current = snapshotHolder.current();
+        if (features.getFeaturesJson().equals(current.getFeaturesJson())) {
+            refreshStats.recordUnchanged();
+            log.info("Webhook features already current, keeping snapshot v{}", current.getVersion());
+            return true;
+        }
+        if (current.isNewerThan(features)) {
+            refreshStats.recordUnchanged();
+            log.info("Webhook features from {} are older than snapshot v{}, keeping it",
+                    features.getDateUpdated(), current.getVersion());
+            return true;
+        }
+        // No HTTP validators for pushed features: the next poll downloads once and then matches them
+        long start = System.nanoTime();
+        FeatureSnapshot published = snapshotHolder.update(features, null, null);
+        refreshStats.recordWebhookApplied();
+        metrics.recordRefresh("webhook", System.nanoTime() - start);
+        metrics.recordPayloadBytes(features.getPayloadBytes());
+        log.info("Applied GrowthBook features from webhook (snapshot v{})", published.getVersion());
+        return true;
+    }
+
+    /**
+     * Counters for applied, skipped (304 or same hash) and failed refreshes
+     */
+    public RefreshStats getRefreshStats() {
+        return refreshStats;
+    }
+
+    private HttpResponse<InputStream> fetchFeatures(FeatureSnapshot current) {
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder()
                     .uri(new URI(properties.getFeaturesEndpoint()))
                     .GET()
-                    .timeout(Duration.ofSeconds(10))
-                    .build();
+                    .timeout(Duration.ofSeconds(10));
+            if (current.getEtag() != null) {
+                request.header("If-None-Match", current.getEtag());
+            }
+            if (current.getLastModified() != null) {
+                request.header("If-Modified-Since", current.getLastModified());
+            }
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 200) {
-                return extractFeatures(response.body());
+            HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+
+            if (response.statusCode() == 200 || response.statusCode() == 304) {
+                return response;
             }
+            response.body().close();
             throw new FeatureFlagException("Failed to fetch features. Status: " + response.statusCode());
         } catch (FeatureFlagException e) {
             throw e;
@@ -205,24 +462,42 @@ public class GrowthBookClient {
     }
 
     /**
-     * Extracts the "features" object from the GrowthBook API response.
+     * Compiled-engine evaluation for a user, queueing an exposure when it lands in an experiment
      */
-    private String extractFeatures(String apiResponse) {
-        try {
-            com.google.gson.JsonObject responseObj = com.google.gson.JsonParser
-                    .parseString(apiResponse)
-                    .getAsJsonObject();
-            if (responseObj.has("features")) {
-                return responseObj.get("features").toString();
+    private EvaluationResult evaluateTracked(CompiledFeatures compiled, String featureKey, Map<String, Object> userAttributes) {
+        EvaluationResult result = compiled.evaluate(featureKey, userAttributes);
+        exposureTracker.track(featureKey, result, userAttributes);
+        return result;
+    }
+
+    /**
+     * Converts a compiled-engine value to the requested type, as the SDK's typed getters do
+     */
+    private static <T> T convertValue(Object value, T fallback, Class<T> valueType) {
+        if (value == null) {
+            return fallback;
+        }
+        if (valueType.isInstance(value)) {
+            return valueType.cast(value);
+        }
+        if (value instanceof Number number) {
+            if (valueType == Integer.class) {
+                return valueType.cast(number.intValue());
+            }
+            if (valueType == Double.class) {
+                return valueType.cast(number.doubleValue());
+            }
+            if (valueType == Long.class) {
+                return valueType.cast(number.longValue());
+            }
+            if (valueType == Float.class) {
+                return valueType.cast(number.floatValue());
             }
-            return apiResponse;
-        } catch (Exception e) {
-            log.error("Error parsing features response: {}", e.getMessage());
-            return "{}";
         }
+        return fallback;
     }
 
-    private String mapToJson(Map<String, Object> map) {
+    String mapToJson(Map<String, Object> map) {
         if (map == null || map.isEmpty()) {
             return "{}";
         }
@@ -0,0 +1,59 @@
+package dev.scastillo.feature_flags.client;
+
+import dev.scastillo.feature_flags.dto.response.RefreshStatsResponse;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for feature refreshes, split by how each one ended.
+ */
+public class RefreshStats {
+
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong webhookApplied = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    void recordApplied() {
+        applied.incrementAndGet();
+    }
+
+    /**
+     * Features taken straight from a webhook payload, no API call made.
+     */
+    void recordWebhookApplied() {
+        webhookApplied.incrementAndGet();
+    }
+
+    /**
+     * Upstream answered 304, nothing was downloaded.
+     */
+    void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Payload was downloaded but hashed the same as the current snapshot.
+     */
+    void recordUnchanged() {
+        unchanged.incrementAndGet();
+    }
+
+    void recordFailed() {
+        failed.incrementAndGet();
+    }
+
+    public RefreshStatsResponse toResponse() {
+        long notModifiedCount = notModified.get();
+        long unchangedCount = unchanged.get();
+        return RefreshStatsResponse.builder()
+                .applied(applied.get())
+                .webhookApplied(webhookApplied.get())
+                .notModified(notModifiedCount)
+                .unchanged(unchangedCount)
+                .skipped(notModifiedCount + unchangedCount)
+                .failed(failed.get())
+                .build();
+    }
+}
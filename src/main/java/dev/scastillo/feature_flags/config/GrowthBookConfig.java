@@ -1,20 +1,25 @@
 package dev.scastillo.feature_flags.config;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import growthbook.sdk.java.GBContext;
-import growthbook.sdk.java.GrowthBook;
+import dev.scastillo.feature_flags.snapshot.FeatureCipher;
+import dev.scastillo.feature_flags.snapshot.FeaturePayload;
+import dev.scastillo.feature_flags.snapshot.FeaturePayloadLoader;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.snapshot.PersistedFeatures;
+import dev.scastillo.feature_flags.snapshot.SharedSnapshot;
+import dev.scastillo.feature_flags.snapshot.SnapshotStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.concurrent.Executors;
 
 @Slf4j
 @Configuration
@@ -22,18 +27,25 @@ import java.time.Duration;
 @ConditionalOnProperty(name = "growthbook.enabled", havingValue = "true", matchIfMissing = true)
 public class GrowthBookConfig {
 
+    private static final PersistedFeatures EMPTY = new PersistedFeatures("{}", null, null, null, null);
+
     private final GrowthBookProperties properties;
-    private final Gson gson = new Gson();
 
     @Bean
     public HttpClient httpClient() {
-        return HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10));
+        if (properties.isVirtualThreads()) {
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        return builder.build();
     }
 
-    @Bean
-    public String featuresJson(HttpClient httpClient) {
+    /**
+     * Fetches the features payload from the GrowthBook API, blocking.
+     * Only used at startup when there is no usable snapshot on disk.
+     */
+    private PersistedFeatures fetchInitialFeatures(HttpClient httpClient) {
         try {
             String endpoint = properties.getFeaturesEndpoint();
             log.info("Fetching GrowthBook features from: {}", endpoint);
@@ -44,55 +56,46 @@ public class GrowthBookConfig {
                     .timeout(Duration.ofSeconds(10))
                     .build();
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
 
             if (response.statusCode() == 200) {
                 log.info("Successfully fetched GrowthBook features");
-                // Extract only the "features" object from the response
-                String featuresOnly = extractFeatures(response.body());
-                log.debug("Features JSON: {}", featuresOnly);
-                return featuresOnly;
+                // The SDK expects only the "features" object of the API response
+                FeaturePayload payload = FeaturePayloadLoader.load(response.body(),
+                        FeatureCipher.forKey(properties.getDecryptionKey()));
+                return new PersistedFeatures(payload.getFeaturesJson(),
+                        response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null),
+                        payload.getPayloadHash(), null);
             } else {
+                response.body().close();
                 log.warn("Failed to fetch features. Status: {}", response.statusCode());
-                return "{}";
+                return EMPTY;
             }
         } catch (Exception e) {
             log.error("Error fetching GrowthBook features: {}", e.getMessage());
-            return "{}";
-        }
-    }
-
-    /**
-     * Extracts the "features" object from the GrowthBook API response.
-     * The API returns: {"status": 200, "features": {...}, "dateUpdated": "..."}
-     * But the SDK expects only the features object: {...}
-     */
-    private String extractFeatures(String apiResponse) {
-        try {
-            JsonObject responseObj = gson.fromJson(apiResponse, JsonObject.class);
-            if (responseObj.has("features")) {
-                return responseObj.get("features").toString();
-            }
-            // If no "features" key, assume the response is already the features object
-            return apiResponse;
-        } catch (Exception e) {
-            log.error("Error parsing features response: {}", e.getMessage());
-            return "{}";
+            return EMPTY;
         }
     }
 
     @Bean
-    public GBContext gbContext(String featuresJson) {
-        return GBContext.builder()
-                .featuresJson(featuresJson)
-                .enabled(properties.isEnabled())
-                .build();
-    }
+    public FeatureSnapshotHolder featureSnapshotHolder(HttpClient httpClient, SnapshotStore snapshotStore) {
+        log.info("Creating GrowthBook feature snapshot with enabled: {}, engine: {}",
+                properties.isEnabled(), properties.getEngine());
 
-    @Bean
-    public GrowthBook growthBook(GBContext gbContext) {
-        log.info("Creating GrowthBook instance with enabled: {}", properties.isEnabled());
-        return new GrowthBook(gbContext);
+        // Prefer features another replica on this host already published, then the last-known-good
+        // snapshot on disk: ready immediately, refreshed in the background
+        FeatureSnapshotHolder holder = SharedSnapshot.readPublished(properties)
+                .or(snapshotStore::load)
+                .map(persisted -> new FeatureSnapshotHolder(persisted, properties))
+                .orElseGet(() -> {
+                    FeatureSnapshotHolder fetched = new FeatureSnapshotHolder(fetchInitialFeatures(httpClient), properties);
+                    if (!fetched.current().getFeatureKeys().isEmpty()) {
+                        snapshotStore.save(fetched.current());
+                    }
+                    return fetched;
+                });
+        holder.addListener((previous, current) -> snapshotStore.saveLater(current));
+        return holder;
     }
 }
-
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Data
 @Component
 @ConfigurationProperties(prefix = "growthbook")
@@ -12,12 +15,207 @@ public class GrowthBookProperties {
     private boolean enabled = true;
     private String apiHost;
     private String clientKey;
+    /**
+     * Decryption key of the SDK connection, when it serves encrypted features
+     */
+    private String decryptionKey;
     private Cache cache = new Cache();
+    /**
+     * Evaluation engine: the GrowthBook SDK, or features compiled once per snapshot
+     */
+    private Engine engine = Engine.SDK;
+    /**
+     * Run outbound GrowthBook calls and refreshes on virtual threads; follows spring.threads.virtual.enabled by default
+     */
+    private boolean virtualThreads = false;
+    private EvaluationCache evaluationCache = new EvaluationCache();
+    private Stream stream = new Stream();
+    private Persistence persistence = new Persistence();
+    private Refresh refresh = new Refresh();
+    private Metrics metrics = new Metrics();
+    private Tenancy tenancy = new Tenancy();
+    private Tracking tracking = new Tracking();
+    private SharedSnapshot sharedSnapshot = new SharedSnapshot();
+    private Bootstrap bootstrap = new Bootstrap();
 
     @Data
     public static class Cache {
         private boolean enabled = true;
         private int ttlSeconds = 60;
+        /**
+         * Cache-Control max-age of the feature GET endpoints; defaults to ttl-seconds, 0 means revalidate every time
+         */
+        private Integer httpMaxAgeSeconds;
+
+        public int effectiveHttpMaxAgeSeconds() {
+            return httpMaxAgeSeconds != null ? httpMaxAgeSeconds : ttlSeconds;
+        }
+    }
+
+    @Data
+    public static class EvaluationCache {
+        private boolean enabled = true;
+        private long maxWeightBytes = 32 * 1024 * 1024;
+        private int ttlSeconds = 300;
+    }
+
+    @Data
+    public static class Stream {
+        private int heartbeatSeconds = 30;
+        /**
+         * SSE connection timeout; 0 keeps connections open until the client leaves
+         */
+        private long timeoutMs = 0;
+        private int maxSubscribers = 10_000;
+        /**
+         * Events waiting to be written to one subscriber; a subscriber that falls this far behind is dropped
+         */
+        private int subscriberQueue = 32;
+    }
+
+    @Data
+    public static class Persistence {
+        private boolean enabled = true;
+        /**
+         * Directory for the last-known-good snapshot file (one file per client key), created owner-only.
+         * Not under the temp dir: other users can read there, and it may be wiped on reboot.
+         */
+        private String directory = System.getProperty("user.home") + "/.feature-flags";
+    }
+
+    @Data
+    public static class Refresh {
+        /**
+         * Triggers arriving within this window after the first one share a single refresh
+         */
+        private long debounceMs = 500;
+        /**
+         * Each scheduled interval is randomly stretched or shortened by up to this fraction
+         */
+        private double jitterRatio = 0.2;
+        /**
+         * After consecutive failures the interval doubles, at most this many times and up to max-backoff-seconds
+         */
+        private int maxBackoffSteps = 5;
+        private long maxBackoffSeconds = 900;
+        /**
+         * Poll interval for a short window after a webhook that signaled a change without carrying it
+         */
+        private long fastPollSeconds = 5;
+        private long fastPollWindowSeconds = 30;
+        /**
+         * While a webhook arrived within this window, scheduled polls are webhook-interval-multiplier times slower
+         */
+        private long webhookHealthySeconds = 1_800;
+        private double webhookIntervalMultiplier = 4;
+    }
+
+    @Data
+    public static class Metrics {
+        /**
+         * Distinct feature keys used as metric tags; the rest are reported as "other"
+         */
+        private int maxFeatureTags = 100;
+    }
+
+    @Data
+    public static class Tenancy {
+        /**
+         * Client keys served besides the default one
+         */
+        private List<Tenant> tenants = new ArrayList<>();
+        /**
+         * Serve any client key requested, not only the configured ones
+         */
+        private boolean allowUnlisted = false;
+        private int maxTenants = 200;
+        /**
+         * Budget for the features JSON held by all loaded tenants; least recently used ones are dropped beyond it
+         */
+        private long maxPayloadBytes = 256L * 1024 * 1024;
+        private int refreshPoolSize = 4;
+    }
+
+    @Data
+    public static class Tenant {
+        private String clientKey;
+        /**
+         * Defaults to growthbook.api-host
+         */
+        private String apiHost;
+        /**
+         * Decryption key of this client key's SDK connection, when it serves encrypted features
+         */
+        private String decryptionKey;
+        /**
+         * Refresh interval; defaults to growthbook.cache.ttl-seconds
+         */
+        private Integer ttlSeconds;
+    }
+
+    @Data
+    public static class Tracking {
+        /**
+         * Record experiment exposures; events go to the ExposureSink bean (rolling NDJSON files by default)
+         */
+        private boolean enabled = false;
+        /**
+         * Events queued for the writer; rounded up to a power of two
+         */
+        private int bufferCapacity = 65_536;
+        private DropPolicy dropPolicy = DropPolicy.DROP_NEWEST;
+        private int batchSize = 1_000;
+        /**
+         * How long the writer waits for more events when the queue is empty
+         */
+        private long flushIntervalMs = 1_000;
+        /**
+         * Repeat exposures of a user to the same experiment inside this window are recorded once; 0 disables
+         */
+        private long dedupWindowSeconds = 3_600;
+        private long dedupMaxEntries = 1_000_000;
+        private String directory = System.getProperty("java.io.tmpdir") + "/feature-flags/exposures";
+        private long maxFileBytes = 64L * 1024 * 1024;
+        private long maxFileAgeSeconds = 3_600;
+    }
+
+    @Data
+    public static class SharedSnapshot {
+        /**
+         * Replicas on one host share one fetch: the lock holder writes a memory-mapped snapshot, the rest read it
+         */
+        private boolean enabled = false;
+        /**
+         * Must be the same for every replica; a tmpfs such as /dev/shm keeps it off the disk
+         */
+        private String directory = System.getProperty("user.home") + "/.feature-flags/shared";
+        private long pollIntervalMs = 100;
+        private int initialCapacityBytes = 1024 * 1024;
+    }
+
+    @Data
+    public static class Bootstrap {
+        /**
+         * Budget for encoded bootstrap payloads (plain and gzip), across snapshots, tenants and key subsets
+         */
+        private long maxWeightBytes = 64L * 1024 * 1024;
+        /**
+         * Payloads not served for this long are dropped
+         */
+        private long idleSeconds = 600;
+    }
+
+    /**
+     * What to drop when the exposure queue is full
+     */
+    public enum DropPolicy {
+        DROP_NEWEST,
+        DROP_OLDEST
+    }
+
+    public enum Engine {
+        SDK,
+        COMPILED
     }
 
     public String getFeaturesEndpoint() {
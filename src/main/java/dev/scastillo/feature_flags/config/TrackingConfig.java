@@ -0,0 +1,25 @@
+package dev.scastillo.feature_flags.config;
+
+import dev.scastillo.feature_flags.tracking.ExposureSink;
+import dev.scastillo.feature_flags.tracking.RollingNdjsonExposureSink;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class TrackingConfig {
+
+    /**
+     * Default exposure sink: rolling NDJSON files under growthbook.tracking.directory
+     */
+    @Bean
+    @ConditionalOnMissingBean(ExposureSink.class)
+    public ExposureSink exposureSink(GrowthBookProperties properties) {
+        GrowthBookProperties.Tracking tracking = properties.getTracking();
+        return new RollingNdjsonExposureSink(Path.of(tracking.getDirectory()), tracking.getMaxFileBytes(),
+                Duration.ofSeconds(tracking.getMaxFileAgeSeconds()));
+    }
+}
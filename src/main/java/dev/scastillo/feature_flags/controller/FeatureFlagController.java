@@ -1,31 +1,111 @@
 package dev.scastillo.feature_flags.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.scastillo.feature_flags.cache.BootstrapPayloadCache;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.dto.request.BatchFeatureEvaluationRequest;
 import dev.scastillo.feature_flags.dto.request.FeatureEvaluationRequest;
+import dev.scastillo.feature_flags.dto.response.BatchFeatureResponse;
+import dev.scastillo.feature_flags.dto.response.EvaluationCacheStatsResponse;
 import dev.scastillo.feature_flags.dto.response.FeatureResponse;
 import dev.scastillo.feature_flags.dto.response.FeatureValueResponse;
+import dev.scastillo.feature_flags.dto.response.RefreshStatsResponse;
+import dev.scastillo.feature_flags.dto.response.SimulationResponse;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.service.CsvUserParser;
 import dev.scastillo.feature_flags.service.FeatureFlagService;
+import dev.scastillo.feature_flags.snapshot.FeaturePayload;
+import dev.scastillo.feature_flags.snapshot.FeaturePayloadLoader;
+import dev.scastillo.feature_flags.tenant.TenantContext;
+import dev.scastillo.feature_flags.tenant.TenantInterceptor;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Feature endpoints. The same routes are served for other client keys under
+ * /api/clients/{clientKey}/features, or with the X-GrowthBook-Client-Key header (see TenantInterceptor).
+ */
 @Slf4j
 @RestController
-@RequestMapping("/api/features")
+@RequestMapping({"/api/features", "/api/clients/{clientKey}/features"})
 @RequiredArgsConstructor
 public class FeatureFlagController {
 
+    static final String SNAPSHOT_VERSION_HEADER = "X-Snapshot-Version";
+
     private final FeatureFlagService featureFlagService;
+    private final ObjectMapper objectMapper;
+    private final GrowthBookProperties properties;
+
+    /**
+     * Get all features (or the given keys) in one response, for client SDKs to bootstrap from.
+     * The body has the shape of the GrowthBook features API and is encoded once per snapshot;
+     * clients that accept gzip get the precompressed bytes. Revalidate with If-None-Match.
+     * GET /api/features?featureKeys=a,b
+     */
+    @GetMapping
+    public ResponseEntity<byte[]> getFeatures(
+            @RequestParam(required = false) List<String> featureKeys,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.debug("GET /api/features");
+        List<String> keys = featureKeys == null || featureKeys.contains("all") ? List.of() : featureKeys;
+        BootstrapPayloadCache.BootstrapPayload payload = featureFlagService.getBootstrapPayload(keys);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        boolean notModified = payload.matches(ifNoneMatch);
+
+        ResponseEntity.BodyBuilder response = notModified
+                ? ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                : ResponseEntity.ok();
+        response.eTag(gzip ? payload.gzipEtag() : payload.getEtag())
+                .cacheControl(cacheControl())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING, TenantInterceptor.CLIENT_KEY_HEADER)
+                .header(SNAPSHOT_VERSION_HEADER, Long.toString(payload.getSnapshotVersion()));
+        if (notModified) {
+            return response.build();
+        }
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.contentType(MediaType.APPLICATION_JSON)
+                .body(gzip ? payload.getGzip() : payload.getJson());
+    }
 
     /**
      * Get feature status by key
      * GET /api/features/{featureKey}
      */
     @GetMapping("/{featureKey}")
-    public ResponseEntity<FeatureResponse> getFeature(@PathVariable String featureKey) {
+    public ResponseEntity<FeatureResponse> getFeature(
+            @PathVariable String featureKey,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("GET /api/features/{}", featureKey);
-        FeatureResponse response = featureFlagService.getFeature(featureKey);
-        return ResponseEntity.ok(response);
+        return cached(featureKey, "feature", ifNoneMatch, () -> featureFlagService.getFeature(featureKey));
     }
 
     /**
@@ -41,6 +121,100 @@ public class FeatureFlagController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Evaluate several features (or all of them) for one user
+     * POST /api/features/evaluate
+     */
+    @PostMapping("/evaluate")
+    public ResponseEntity<BatchFeatureResponse> evaluateFeatures(
+            @RequestBody BatchFeatureEvaluationRequest request) {
+        log.debug("POST /api/features/evaluate");
+        BatchFeatureResponse response = featureFlagService.evaluateFeatures(request);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Evaluate features for many users. The body is NDJSON, one FeatureEvaluationRequest per line;
+     * the response streams one BulkEvaluationResult per line as users complete.
+     * POST /api/features/evaluate/bulk?featureKeys=a,b
+     */
+    @PostMapping(value = "/evaluate/bulk",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> evaluateBulk(
+            @RequestParam(required = false) List<String> featureKeys,
+            HttpServletRequest request) {
+        log.debug("POST /api/features/evaluate/bulk");
+        List<String> keys = featureKeys == null || featureKeys.contains("all") ? List.of() : featureKeys;
+        // The body is written on another thread: carry the selected client key over
+        String clientKey = TenantContext.currentClientKey();
+
+        StreamingResponseBody body = out -> {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            Iterator<FeatureEvaluationRequest> users = reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .map(this::readEvaluationRequest)
+                    .iterator();
+
+            TenantContext.callAs(clientKey, () -> featureFlagService.evaluateBulk(users, keys, result -> {
+                try {
+                    String line = objectMapper.writeValueAsString(result);
+                    synchronized (writer) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            writer.flush();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Simulate a rollout over a file of users and count how many land on each rule and variation.
+     * The users part is CSV with a header row (.csv name or text/csv type) or NDJSON like the bulk endpoint;
+     * the optional features part is a features payload to simulate instead of the current snapshot.
+     * POST /api/features/simulate?featureKeys=a,b (multipart: users, features)
+     */
+    @PostMapping(value = "/simulate", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<SimulationResponse> simulate(
+            @RequestParam List<String> featureKeys,
+            @RequestPart("users") MultipartFile users,
+            @RequestPart(value = "features", required = false) MultipartFile features) throws IOException {
+        log.debug("POST /api/features/simulate");
+        FeaturePayload supplied = null;
+        if (features != null && !features.isEmpty()) {
+            try (InputStream in = features.getInputStream()) {
+                supplied = FeaturePayloadLoader.load(in);
+            }
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(users.getInputStream(), StandardCharsets.UTF_8), 64 * 1024)) {
+            Function<String, FeatureEvaluationRequest> parser;
+            if (isCsv(users)) {
+                String header = reader.readLine();
+                if (header == null) {
+                    throw new FeatureFlagException("The CSV users file has no header row");
+                }
+                parser = new CsvUserParser(header);
+            } else {
+                parser = this::readEvaluationRequest;
+            }
+            Iterator<String> records = reader.lines()
+                    .filter(line -> !line.isBlank())
+                    .iterator();
+            return ResponseEntity.ok(featureFlagService.simulate(records, parser, featureKeys, supplied));
+        }
+    }
+
     /**
      * Get string value for a feature
      * GET /api/features/{featureKey}/string?default=value
@@ -48,10 +222,11 @@ public class FeatureFlagController {
     @GetMapping("/{featureKey}/string")
     public ResponseEntity<FeatureValueResponse<String>> getStringValue(
             @PathVariable String featureKey,
-            @RequestParam(defaultValue = "") String defaultValue) {
+            @RequestParam(defaultValue = "") String defaultValue,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("GET /api/features/{}/string", featureKey);
-        FeatureValueResponse<String> response = featureFlagService.getStringValue(featureKey, defaultValue);
-        return ResponseEntity.ok(response);
+        return cached(featureKey, "string:" + defaultValue, ifNoneMatch,
+                () -> featureFlagService.getStringValue(featureKey, defaultValue));
     }
 
     /**
@@ -61,10 +236,11 @@ public class FeatureFlagController {
     @GetMapping("/{featureKey}/boolean")
     public ResponseEntity<FeatureValueResponse<Boolean>> getBooleanValue(
             @PathVariable String featureKey,
-            @RequestParam(defaultValue = "false") Boolean defaultValue) {
+            @RequestParam(defaultValue = "false") Boolean defaultValue,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("GET /api/features/{}/boolean", featureKey);
-        FeatureValueResponse<Boolean> response = featureFlagService.getBooleanValue(featureKey, defaultValue);
-        return ResponseEntity.ok(response);
+        return cached(featureKey, "boolean:" + defaultValue, ifNoneMatch,
+                () -> featureFlagService.getBooleanValue(featureKey, defaultValue));
     }
 
     /**
@@ -74,10 +250,11 @@ public class FeatureFlagController {
     @GetMapping("/{featureKey}/integer")
     public ResponseEntity<FeatureValueResponse<Integer>> getIntegerValue(
             @PathVariable String featureKey,
-            @RequestParam(defaultValue = "0") Integer defaultValue) {
+            @RequestParam(defaultValue = "0") Integer defaultValue,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("GET /api/features/{}/integer", featureKey);
-        FeatureValueResponse<Integer> response = featureFlagService.getIntegerValue(featureKey, defaultValue);
-        return ResponseEntity.ok(response);
+        return cached(featureKey, "integer:" + defaultValue, ifNoneMatch,
+                () -> featureFlagService.getIntegerValue(featureKey, defaultValue));
     }
 
     /**
@@ -87,10 +264,11 @@ public class FeatureFlagController {
     @GetMapping("/{featureKey}/double")
     public ResponseEntity<FeatureValueResponse<Double>> getDoubleValue(
             @PathVariable String featureKey,
-            @RequestParam(defaultValue = "0.0") Double defaultValue) {
+            @RequestParam(defaultValue = "0.0") Double defaultValue,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("GET /api/features/{}/double", featureKey);
-        FeatureValueResponse<Double> response = featureFlagService.getDoubleValue(featureKey, defaultValue);
-        return ResponseEntity.ok(response);
+        return cached(featureKey, "double:" + defaultValue, ifNoneMatch,
+                () -> featureFlagService.getDoubleValue(featureKey, defaultValue));
     }
 
     /**
@@ -103,5 +281,121 @@ public class FeatureFlagController {
         featureFlagService.refreshFeatures();
         return ResponseEntity.ok().build();
     }
-}
 
+    /**
+     * Refresh counters (applied / skipped / failed)
+     * GET /api/features/refresh/stats
+     */
+    @GetMapping("/refresh/stats")
+    public ResponseEntity<RefreshStatsResponse> getRefreshStats() {
+        log.debug("GET /api/features/refresh/stats");
+        return ResponseEntity.ok(featureFlagService.getRefreshStats());
+    }
+
+    /**
+     * Evaluation cache counters (hits / misses / evictions)
+     * GET /api/features/cache/stats
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<EvaluationCacheStatsResponse> getEvaluationCacheStats() {
+        log.debug("GET /api/features/cache/stats");
+        return ResponseEntity.ok(featureFlagService.getEvaluationCacheStats());
+    }
+
+    /**
+     * Answers 304 without evaluating when the client already has the body for the current features.
+     * The ETag is taken before evaluating: if a refresh lands in between, the client gets the newer
+     * body under the older tag and simply revalidates into a 200 on its next request.
+     * Tags come from the features content, so any replica, restarted or not, validates them alike.
+     * They are weak: the body also carries the snapshot version, which is per process, so two
+     * replicas answer equivalent but not byte-identical bodies under the same tag.
+     */
+    private <T> ResponseEntity<T> cached(String featureKey, String variant, String ifNoneMatch, Supplier<T> body) {
+        String etag = etag(featureFlagService.getSnapshotContentHash(), featureKey, variant);
+        boolean notModified = etagMatches(ifNoneMatch, etag);
+        ResponseEntity.BodyBuilder response = notModified
+                ? ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                : ResponseEntity.ok();
+        response.eTag(etag)
+                .cacheControl(cacheControl())
+                .varyBy(TenantInterceptor.CLIENT_KEY_HEADER);
+        return notModified ? response.build() : response.body(body.get());
+    }
+
+    private CacheControl cacheControl() {
+        int maxAge = properties.getCache().effectiveHttpMaxAgeSeconds();
+        return maxAge > 0 ? CacheControl.maxAge(maxAge, TimeUnit.SECONDS) : CacheControl.noCache();
+    }
+
+    /**
+     * Weak tag of the snapshot content hash plus a hash of the feature key and the variant (endpoint and default value)
+     */
+    static String etag(String contentHash, String featureKey, String variant) {
+        return "W/\"" + contentHash + "-" + Integer.toHexString((featureKey + '\0' + variant).hashCode()) + "\"";
+    }
+
+    /**
+     * Weak comparison, as If-None-Match requires: W/ prefixes are ignored on both sides
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        String opaque = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = opaqueTag(candidate.trim());
+            if (tag.equals("*") || tag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * True unless the client did not ask for gzip or refused it with q=0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].replace(" ", "");
+                if (param.startsWith("q=")) {
+                    try {
+                        if (Double.parseDouble(param.substring(2)) <= 0) {
+                            return false;
+                        }
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isCsv(MultipartFile file) {
+        String filename = file.getOriginalFilename();
+        return "text/csv".equals(file.getContentType())
+                || (filename != null && filename.toLowerCase().endsWith(".csv"));
+    }
+
+    private FeatureEvaluationRequest readEvaluationRequest(String line) {
+        try {
+            return objectMapper.readValue(line, FeatureEvaluationRequest.class);
+        } catch (JsonProcessingException e) {
+            throw new FeatureFlagException("Invalid NDJSON evaluation request: " + e.getOriginalMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package dev.scastillo.feature_flags.controller;
+
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.stream.FeatureChangeBroadcaster;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Server-Sent Events stream of feature changes.
+ * Subscribe once instead of polling /api/features/{featureKey}:
+ * GET /api/stream/features (Accept: text/event-stream)
+ *
+ * Events carry the snapshot content hash as their id, so a reconnecting client
+ * (Last-Event-ID) only gets a full "snapshot" event if the features changed since,
+ * whichever replica it reconnects to.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/stream")
+@RequiredArgsConstructor
+public class FeatureStreamController {
+
+    private final FeatureChangeBroadcaster broadcaster;
+
+    @GetMapping(value = "/features", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamFeatures(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.debug("GET /api/stream/features (Last-Event-ID: {})", lastEventId);
+        try {
+            return ResponseEntity.ok(broadcaster.subscribe(lastEventId != null ? lastEventId.trim() : null));
+        } catch (FeatureFlagException e) {
+            log.warn("Rejecting feature stream subscriber: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
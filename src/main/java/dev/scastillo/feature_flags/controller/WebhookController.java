@@ -1,9 +1,10 @@
 package dev.scastillo.feature_flags.controller;
 
+import dev.scastillo.feature_flags.scheduler.RefreshCoordinator;
+import dev.scastillo.feature_flags.security.WebhookSignatureVerifier;
 import dev.scastillo.feature_flags.service.FeatureFlagService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,53 +23,43 @@ import org.springframework.web.bind.annotation.*;
 public class WebhookController {
 
     private final FeatureFlagService featureFlagService;
-
-    @Value("${growthbook.webhook.secret:}")
-    private String webhookSecret;
+    private final WebhookSignatureVerifier signatureVerifier;
 
     /**
      * Webhook endpoint for GrowthBook feature updates.
      * Configure this in GrowthBook Settings > Webhooks.
+     * When the payload carries the features they are applied directly,
+     * otherwise a background refresh is scheduled.
      * 
      * POST /api/webhooks/growthbook
      */
     @PostMapping("/growthbook")
     public ResponseEntity<String> handleGrowthBookWebhook(
             @RequestHeader(value = "X-GrowthBook-Signature", required = false) String signature,
-            @RequestBody(required = false) String payload) {
+            @RequestBody(required = false) byte[] payload) {
         
         log.info("Received GrowthBook webhook notification");
         
-        // Optional: Validate webhook signature if secret is configured
-        if (!webhookSecret.isEmpty() && !validateSignature(signature, payload)) {
+        // Validate webhook signature if secret is configured
+        if (!signatureVerifier.verify(signature, payload)) {
             log.warn("Invalid webhook signature");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid signature");
         }
-        
-        try {
-            featureFlagService.refreshFeatures();
-            log.info("Features refreshed successfully via webhook");
-            return ResponseEntity.ok("Features refreshed");
-        } catch (Exception e) {
-            log.error("Failed to refresh features via webhook: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to refresh features");
-        }
-    }
 
-    /**
-     * Simple signature validation (optional security layer).
-     * GrowthBook signs webhooks with HMAC-SHA256.
-     */
-    private boolean validateSignature(String signature, String payload) {
-        if (signature == null || signature.isEmpty()) {
-            // If no signature provided but secret is configured, reject
-            return webhookSecret.isEmpty();
+        if (payload != null && payload.length > 0
+                && featureFlagService.applyWebhookPayload(payload)) {
+            return ResponseEntity.ok("Features applied");
         }
         
-        // TODO: Implement HMAC-SHA256 validation if you need it
-        // For now, just check if signature header is present
-        return true;
+        // Answer right away; webhook bursts are merged into a single background refresh
+        featureFlagService.requestRefresh(RefreshCoordinator.WEBHOOK)
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        log.error("Failed to refresh features via webhook: {}", e.getMessage());
+                    } else {
+                        log.info("Features refreshed successfully via webhook");
+                    }
+                });
+        return ResponseEntity.accepted().body("Refresh scheduled");
     }
 }
-
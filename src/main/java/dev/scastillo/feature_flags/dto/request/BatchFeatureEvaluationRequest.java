@@ -0,0 +1,26 @@
+package dev.scastillo.feature_flags.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchFeatureEvaluationRequest {
+
+    /**
+     * Keys to evaluate. Empty, missing or ["all"] evaluates every known feature.
+     */
+    private List<String> featureKeys;
+    private FeatureEvaluationRequest attributes;
+
+    public boolean isAllFeatures() {
+        return featureKeys == null || featureKeys.isEmpty()
+                || (featureKeys.size() == 1 && "all".equalsIgnoreCase(featureKeys.get(0)));
+    }
+}
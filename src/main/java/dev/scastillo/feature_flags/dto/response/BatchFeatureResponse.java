@@ -0,0 +1,18 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchFeatureResponse {
+
+    private int count;
+    private List<FeatureResponse> features;
+}
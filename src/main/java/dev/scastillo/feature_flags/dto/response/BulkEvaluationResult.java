@@ -0,0 +1,24 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * One NDJSON line of a bulk evaluation: the results for a single user.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkEvaluationResult {
+
+    private String userId;
+    private Map<String, Boolean> features;
+    private String error;
+}
@@ -0,0 +1,21 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EvaluationCacheStatsResponse {
+
+    private boolean enabled;
+    private long size;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long evictionWeight;
+}
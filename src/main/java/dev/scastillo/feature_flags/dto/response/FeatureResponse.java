@@ -1,5 +1,6 @@
 package dev.scastillo.feature_flags.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,5 +16,17 @@ public class FeatureResponse {
     private boolean enabled;
     private Object value;
     private String source;
+    /**
+     * Where the value came from: defaultValue, force, experiment or unknownFeature
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String valueSource;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String ruleId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String experimentKey;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer variationId;
+    private long snapshotVersion;
 }
 
@@ -0,0 +1,27 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Simulated users of one feature, split by the rule (and variation) that decided their value.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeatureSimulation {
+
+    private String featureKey;
+    private long users;
+    private long on;
+    private long off;
+    /**
+     * Most common outcome first
+     */
+    private List<SimulationOutcome> outcomes;
+}
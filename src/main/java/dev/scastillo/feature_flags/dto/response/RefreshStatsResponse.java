@@ -0,0 +1,35 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshStatsResponse {
+
+    private long applied;
+    /**
+     * Snapshots published straight from webhook payloads
+     */
+    private long webhookApplied;
+    private long notModified;
+    private long unchanged;
+    private long skipped;
+    private long failed;
+    /**
+     * Refresh requests received (webhook, scheduler, manual, startup)
+     */
+    private long triggers;
+    /**
+     * Requests that joined an already pending refresh instead of fetching again
+     */
+    private long mergedTriggers;
+    /**
+     * Refreshes actually run by the coordinator
+     */
+    private long executed;
+}
@@ -0,0 +1,34 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Users that got one particular result: a default value, a force rule or an experiment variation.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SimulationOutcome {
+
+    /**
+     * defaultValue, force, experiment or unknownFeature
+     */
+    private String source;
+    private String ruleId;
+    private String experimentKey;
+    private Integer variationId;
+    @JsonInclude(JsonInclude.Include.ALWAYS)
+    private Object value;
+    private boolean on;
+    private long users;
+    /**
+     * Share of the feature's simulated users, 0 to 100
+     */
+    private double percent;
+}
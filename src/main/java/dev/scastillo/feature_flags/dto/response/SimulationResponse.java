@@ -0,0 +1,33 @@
+package dev.scastillo.feature_flags.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a rollout simulation: how the given users split across each feature's rules and variations.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SimulationResponse {
+
+    /**
+     * Snapshot simulated against; null when the features were supplied with the request
+     */
+    private Long snapshotVersion;
+    private long users;
+    /**
+     * Rows that could not be parsed; they are not counted in any feature
+     */
+    private long failed;
+    private String firstError;
+    private long elapsedMs;
+    private List<FeatureSimulation> features;
+}
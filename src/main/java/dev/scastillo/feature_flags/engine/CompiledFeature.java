@@ -0,0 +1,51 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A feature definition compiled into its ordered rules and a shared default result.
+ */
+final class CompiledFeature {
+
+    private final CompiledRule[] rules;
+    private final EvaluationResult defaultResult;
+    private final long indexBytes;
+
+    CompiledFeature(String key, Map<String, Object> definition, boolean enabled) {
+        this.defaultResult = new EvaluationResult(definition.get("defaultValue"), EvaluationSource.DEFAULT_VALUE,
+                null, null, -1);
+        List<CompiledRule> compiled = new ArrayList<>();
+        if (definition.get("rules") instanceof List<?> rules) {
+            for (Object item : rules) {
+                if (!(item instanceof Map<?, ?> raw)) {
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Object> rule = (Map<String, Object>) raw;
+                if (rule.containsKey("force")) {
+                    compiled.add(new ForceRule(key, rule));
+                } else if (rule.get("variations") instanceof List<?>) {
+                    compiled.add(new ExperimentRule(key, rule, enabled));
+                }
+            }
+        }
+        this.rules = compiled.toArray(CompiledRule[]::new);
+        this.indexBytes = compiled.stream().mapToLong(CompiledRule::indexBytes).sum();
+    }
+
+    long indexBytes() {
+        return indexBytes;
+    }
+
+    EvaluationResult evaluate(Map<String, Object> attributes) {
+        for (CompiledRule rule : rules) {
+            EvaluationResult result = rule.evaluate(attributes);
+            if (result != null) {
+                return result;
+            }
+        }
+        return defaultResult;
+    }
+}
@@ -0,0 +1,81 @@
+package dev.scastillo.feature_flags.engine;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * GrowthBook features payload compiled once per snapshot into predicate objects.
+ * Condition trees, force rules, rollouts and experiment bucket ranges are resolved
+ * up front, so {@link #evaluate(String, Map)} reads plain Java attribute maps directly
+ * (no attributes JSON round trip) and returns shared, precomputed results.
+ * Large $in / $nin lists are hash-indexed at compile time; their approximate memory is
+ * reported per feature by {@link #indexBytesByFeature()}.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class CompiledFeatures {
+
+    private final Map<String, CompiledFeature> features;
+    private final Map<String, Long> indexBytesByFeature;
+
+    private CompiledFeatures(Map<String, CompiledFeature> features) {
+        this.features = features;
+        Map<String, Long> indexBytes = new HashMap<>();
+        features.forEach((key, feature) -> {
+            if (feature.indexBytes() > 0) {
+                indexBytes.put(key, feature.indexBytes());
+            }
+        });
+        this.indexBytesByFeature = Collections.unmodifiableMap(indexBytes);
+    }
+
+    public static CompiledFeatures compile(String featuresJson, boolean enabled) {
+        JsonElement parsed = JsonParser.parseString(featuresJson);
+        return compile(parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject(), enabled);
+    }
+
+    public static CompiledFeatures compile(JsonObject featuresJson, boolean enabled) {
+        Map<String, CompiledFeature> compiled = new HashMap<>(Math.max(16, featuresJson.size() * 2));
+        for (Map.Entry<String, JsonElement> entry : featuresJson.entrySet()) {
+            Object definition = JsValues.toJava(entry.getValue());
+            if (definition instanceof Map<?, ?> map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> feature = (Map<String, Object>) map;
+                compiled.put(entry.getKey(), new CompiledFeature(entry.getKey(), feature, enabled));
+            }
+        }
+        return new CompiledFeatures(compiled);
+    }
+
+    public EvaluationResult evaluate(String featureKey, Map<String, Object> attributes) {
+        CompiledFeature feature = features.get(featureKey);
+        if (feature == null) {
+            return EvaluationResult.UNKNOWN;
+        }
+        return feature.evaluate(attributes != null ? attributes : Map.of());
+    }
+
+    public Set<String> featureKeys() {
+        return Collections.unmodifiableSet(features.keySet());
+    }
+
+    public int size() {
+        return features.size();
+    }
+
+    /**
+     * Approximate heap held by hash-indexed $in / $nin lists, for the features that have any
+     */
+    public Map<String, Long> indexBytesByFeature() {
+        return indexBytesByFeature;
+    }
+
+    public long indexBytes() {
+        return indexBytesByFeature.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
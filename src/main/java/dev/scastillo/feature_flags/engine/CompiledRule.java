@@ -0,0 +1,72 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One compiled feature rule. Returns the precomputed result when the rule applies
+ * to the given attributes, or null to fall through to the next rule.
+ */
+abstract class CompiledRule {
+
+    private final Condition condition;
+    private final HashFilter[] filters;
+    private final long indexBytes;
+
+    CompiledRule(Map<String, Object> rule) {
+        List<MemberSet> indexes = new ArrayList<>();
+        this.condition = rule.containsKey("condition")
+                ? ConditionCompiler.compile(rule.get("condition"), indexes)
+                : Condition.ALWAYS;
+        this.filters = HashFilter.compileAll(rule.get("filters"));
+        this.indexBytes = indexes.stream().mapToLong(MemberSet::estimatedBytes).sum();
+    }
+
+    abstract EvaluationResult evaluate(Map<String, Object> attributes);
+
+    final boolean matches(Map<String, Object> attributes) {
+        if (!condition.test(attributes)) {
+            return false;
+        }
+        for (HashFilter filter : filters) {
+            if (!filter.includes(attributes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Approximate heap held by the hash-indexed $in / $nin lists of the condition
+     */
+    final long indexBytes() {
+        return indexBytes;
+    }
+
+    final boolean hasFilters() {
+        return filters.length > 0;
+    }
+
+    static String string(Map<String, Object> rule, String key, String fallback) {
+        Object value = rule.get(key);
+        return value instanceof String string && !string.isEmpty() ? string : fallback;
+    }
+
+    static int integer(Map<String, Object> rule, String key, int fallback) {
+        Object value = rule.get(key);
+        return value instanceof Number number ? number.intValue() : fallback;
+    }
+
+    static double[] range(Object value) {
+        if (value instanceof List<?> list && list.size() == 2
+                && list.get(0) instanceof Number start && list.get(1) instanceof Number end) {
+            return new double[]{start.doubleValue(), end.doubleValue()};
+        }
+        return null;
+    }
+
+    static String hashValue(Map<String, Object> attributes, String hashAttribute) {
+        return JsValues.toHashString(attributes.get(hashAttribute));
+    }
+}
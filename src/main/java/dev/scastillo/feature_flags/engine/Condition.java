@@ -0,0 +1,14 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.Map;
+
+/**
+ * A precompiled targeting condition evaluated against user attributes.
+ */
+@FunctionalInterface
+interface Condition {
+
+    Condition ALWAYS = attributes -> true;
+
+    boolean test(Map<String, Object> attributes);
+}
@@ -0,0 +1,337 @@
+package dev.scastillo.feature_flags.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles GrowthBook condition objects (MongoDB-like query syntax) into predicate trees.
+ * Attribute paths are split, regexes and version strings prepared, and $in / $nin operand
+ * lists turned into {@link MemberSet}s (hash-indexed when large) once per snapshot instead
+ * of on every evaluation.
+ * Saved groups ($inGroup / $notInGroup) are inlined by the payload loader; a reference that
+ * still reaches the compiler names a group the payload did not carry and is treated as empty.
+ */
+@Slf4j
+final class ConditionCompiler {
+
+    private static final ValueCondition NEVER = value -> false;
+
+    private ConditionCompiler() {
+    }
+
+    static Condition compile(Object condition) {
+        return compile(condition, new ArrayList<>());
+    }
+
+    /**
+     * Compiles the condition, adding the hash-indexed operand lists it builds to {@code indexes}.
+     */
+    static Condition compile(Object condition, List<MemberSet> indexes) {
+        if (!(condition instanceof Map<?, ?> map)) {
+            return attributes -> false;
+        }
+        List<Condition> parts = new ArrayList<>(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            switch (key) {
+                case "$or" -> parts.add(anyOf(value, indexes));
+                case "$nor" -> {
+                    Condition or = anyOf(value, indexes);
+                    parts.add(attributes -> !or.test(attributes));
+                }
+                case "$and" -> parts.add(allOf(compileAll(value, indexes)));
+                case "$not" -> {
+                    Condition not = compile(value, indexes);
+                    parts.add(attributes -> !not.test(attributes));
+                }
+                default -> parts.add(attribute(key, compileValue(value, indexes)));
+            }
+        }
+        return allOf(parts);
+    }
+
+    private static List<Condition> compileAll(Object conditions, List<MemberSet> indexes) {
+        List<Condition> compiled = new ArrayList<>();
+        if (conditions instanceof List<?> list) {
+            list.forEach(condition -> compiled.add(compile(condition, indexes)));
+        }
+        return compiled;
+    }
+
+    private static Condition anyOf(Object conditions, List<MemberSet> indexes) {
+        Condition[] compiled = compileAll(conditions, indexes).toArray(Condition[]::new);
+        if (compiled.length == 0) {
+            return Condition.ALWAYS;
+        }
+        return attributes -> {
+            for (Condition condition : compiled) {
+                if (condition.test(attributes)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private static Condition allOf(List<Condition> parts) {
+        if (parts.isEmpty()) {
+            return Condition.ALWAYS;
+        }
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        Condition[] compiled = parts.toArray(Condition[]::new);
+        return attributes -> {
+            for (Condition condition : compiled) {
+                if (!condition.test(attributes)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static Condition attribute(String path, ValueCondition condition) {
+        if (path.indexOf('.') < 0) {
+            return attributes -> condition.test(attributes.get(path));
+        }
+        String[] parts = path.split("\\.");
+        return attributes -> condition.test(resolve(attributes, parts));
+    }
+
+    private static Object resolve(Map<String, Object> attributes, String[] path) {
+        Object current = attributes;
+        for (String part : path) {
+            if (current instanceof Map<?, ?> map && map.containsKey(part)) {
+                current = map.get(part);
+            } else {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    static ValueCondition compileValue(Object expected, List<MemberSet> indexes) {
+        if (!isOperatorObject(expected)) {
+            return value -> JsValues.conditionEquals(value, expected);
+        }
+        Map<?, ?> operators = (Map<?, ?>) expected;
+        ValueCondition[] compiled = new ValueCondition[operators.size()];
+        int i = 0;
+        for (Map.Entry<?, ?> entry : operators.entrySet()) {
+            compiled[i++] = compileOperator(String.valueOf(entry.getKey()), entry.getValue(), indexes);
+        }
+        if (compiled.length == 1) {
+            return compiled[0];
+        }
+        return value -> {
+            for (ValueCondition condition : compiled) {
+                if (!condition.test(value)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static boolean isOperatorObject(Object value) {
+        if (!(value instanceof Map<?, ?> map) || map.isEmpty()) {
+            return false;
+        }
+        for (Object key : map.keySet()) {
+            if (!String.valueOf(key).startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ValueCondition compileOperator(String operator, Object expected, List<MemberSet> indexes) {
+        return switch (operator) {
+            case "$eq" -> value -> JsValues.strictEquals(value, expected);
+            case "$ne" -> value -> !JsValues.strictEquals(value, expected);
+            case "$lt" -> value -> {
+                Integer cmp = JsValues.compare(value, expected);
+                return cmp != null && cmp < 0;
+            };
+            case "$lte" -> value -> {
+                Integer cmp = JsValues.compare(value, expected);
+                return cmp != null && cmp <= 0;
+            };
+            case "$gt" -> value -> {
+                Integer cmp = JsValues.compare(value, expected);
+                return cmp != null && cmp > 0;
+            };
+            case "$gte" -> value -> {
+                Integer cmp = JsValues.compare(value, expected);
+                return cmp != null && cmp >= 0;
+            };
+            case "$veq", "$vne", "$vgt", "$vgte", "$vlt", "$vlte" -> versionOperator(operator, expected);
+            case "$regex" -> regex(expected);
+            case "$in" -> {
+                if (!(expected instanceof List<?> list)) {
+                    yield NEVER;
+                }
+                MemberSet members = memberSet(list, indexes);
+                yield value -> isIn(value, members);
+            }
+            case "$nin" -> {
+                if (!(expected instanceof List<?> list)) {
+                    yield NEVER;
+                }
+                MemberSet members = memberSet(list, indexes);
+                yield value -> !isIn(value, members);
+            }
+            case "$exists" -> JsValues.isTruthy(expected) ? value -> value != null : value -> value == null;
+            case "$type" -> value -> JsValues.typeOf(value).equals(expected);
+            case "$not" -> {
+                ValueCondition not = compileValue(expected, indexes);
+                yield value -> !not.test(value);
+            }
+            case "$size" -> {
+                ValueCondition size = compileValue(expected, indexes);
+                yield value -> value instanceof List<?> list && size.test((long) list.size());
+            }
+            case "$elemMatch" -> elemMatch(expected, indexes);
+            case "$all" -> all(expected, indexes);
+            case "$inGroup" -> {
+                log.warn("Saved group {} is not in the payload, treating it as empty", expected);
+                yield NEVER;
+            }
+            case "$notInGroup" -> {
+                log.warn("Saved group {} is not in the payload, treating it as empty", expected);
+                yield value -> true;
+            }
+            default -> NEVER;
+        };
+    }
+
+    private static ValueCondition versionOperator(String operator, Object expected) {
+        if (!(expected instanceof String version)) {
+            return NEVER;
+        }
+        String padded = JsValues.paddedVersion(version);
+        return value -> {
+            if (!(value instanceof String actual)) {
+                return false;
+            }
+            int cmp = JsValues.paddedVersion(actual).compareTo(padded);
+            return switch (operator) {
+                case "$veq" -> cmp == 0;
+                case "$vne" -> cmp != 0;
+                case "$vgt" -> cmp > 0;
+                case "$vgte" -> cmp >= 0;
+                case "$vlt" -> cmp < 0;
+                default -> cmp <= 0;
+            };
+        };
+    }
+
+    private static ValueCondition regex(Object expected) {
+        if (!(expected instanceof String source)) {
+            return NEVER;
+        }
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(source);
+        } catch (PatternSyntaxException e) {
+            return NEVER;
+        }
+        return value -> value != null && pattern.matcher(asString(value)).find();
+    }
+
+    private static ValueCondition elemMatch(Object expected, List<MemberSet> indexes) {
+        if (isOperatorObject(expected)) {
+            ValueCondition element = compileValue(expected, indexes);
+            return value -> {
+                if (value instanceof List<?> list) {
+                    for (Object item : list) {
+                        if (element.test(item)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            };
+        }
+        Condition element = compile(expected, indexes);
+        return value -> {
+            if (value instanceof List<?> list) {
+                for (Object item : list) {
+                    if (element.test(asAttributes(item))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        };
+    }
+
+    private static ValueCondition all(Object expected, List<MemberSet> indexes) {
+        if (!(expected instanceof List<?> list)) {
+            return NEVER;
+        }
+        ValueCondition[] required = list.stream()
+                .map(item -> compileValue(item, indexes))
+                .toArray(ValueCondition[]::new);
+        return value -> {
+            if (!(value instanceof List<?> actual)) {
+                return false;
+            }
+            for (ValueCondition condition : required) {
+                boolean matched = false;
+                for (Object item : actual) {
+                    if (condition.test(item)) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (!matched) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static MemberSet memberSet(List<?> list, List<MemberSet> indexes) {
+        MemberSet members = MemberSet.of(list.toArray());
+        if (members.isIndexed()) {
+            indexes.add(members);
+        }
+        return members;
+    }
+
+    private static boolean isIn(Object actual, MemberSet members) {
+        if (actual instanceof List<?> list) {
+            for (Object item : list) {
+                if (members.contains(item)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return members.contains(actual);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asAttributes(Object value) {
+        return value instanceof Map<?, ?> map ? (Map<String, Object>) map : Map.of();
+    }
+
+    private static String asString(Object value) {
+        if (value instanceof String string) {
+            return string;
+        }
+        if (value instanceof Number number) {
+            return JsValues.numberToString(number);
+        }
+        return String.valueOf(value);
+    }
+}
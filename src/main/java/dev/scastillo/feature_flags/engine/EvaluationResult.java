@@ -0,0 +1,81 @@
+package dev.scastillo.feature_flags.engine;
+
+/**
+ * Result of evaluating one feature. Instances are built once per snapshot
+ * (one per default value, force rule and experiment variation) and shared
+ * by every evaluation that lands on them, so evaluating allocates nothing.
+ */
+public final class EvaluationResult {
+
+    static final EvaluationResult UNKNOWN = new EvaluationResult(null, EvaluationSource.UNKNOWN_FEATURE, null, null, -1);
+
+    private final Object value;
+    private final boolean on;
+    private final EvaluationSource source;
+    private final String ruleId;
+    private final String experimentKey;
+    private final int variationId;
+    private final String hashAttribute;
+
+    EvaluationResult(Object value, EvaluationSource source, String ruleId, String experimentKey, int variationId) {
+        this(value, source, ruleId, experimentKey, variationId, null);
+    }
+
+    EvaluationResult(Object value, EvaluationSource source, String ruleId, String experimentKey, int variationId,
+                     String hashAttribute) {
+        this.value = value;
+        this.on = JsValues.isTruthy(value);
+        this.source = source;
+        this.ruleId = ruleId;
+        this.experimentKey = experimentKey;
+        this.variationId = variationId;
+        this.hashAttribute = hashAttribute;
+    }
+
+    /**
+     * Plain Java value: null, Boolean, Long, Double, String, List or Map.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    public boolean isOn() {
+        return on;
+    }
+
+    public boolean isOff() {
+        return !on;
+    }
+
+    public EvaluationSource getSource() {
+        return source;
+    }
+
+    public String getRuleId() {
+        return ruleId;
+    }
+
+    public String getExperimentKey() {
+        return experimentKey;
+    }
+
+    /**
+     * Assigned variation index, or -1 when the value did not come from an experiment.
+     */
+    public int getVariationId() {
+        return variationId;
+    }
+
+    /**
+     * Attribute the experiment bucketed on, or null when the value did not come from an experiment.
+     */
+    public String getHashAttribute() {
+        return hashAttribute;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationResult(value=" + value + ", on=" + on + ", source=" + source
+                + ", ruleId=" + ruleId + ", experimentKey=" + experimentKey + ", variationId=" + variationId + ")";
+    }
+}
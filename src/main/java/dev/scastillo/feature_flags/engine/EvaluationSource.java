@@ -0,0 +1,21 @@
+package dev.scastillo.feature_flags.engine;
+
+/**
+ * Where an evaluated value came from, mirroring GrowthBook's feature result sources.
+ */
+public enum EvaluationSource {
+    UNKNOWN_FEATURE("unknownFeature"),
+    DEFAULT_VALUE("defaultValue"),
+    FORCE("force"),
+    EXPERIMENT("experiment");
+
+    private final String value;
+
+    EvaluationSource(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
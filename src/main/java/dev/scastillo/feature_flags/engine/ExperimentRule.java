@@ -0,0 +1,110 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An experiment rule. Bucket ranges, hash seed and the result for each variation
+ * are computed when the snapshot is compiled; evaluation only hashes and scans ranges.
+ */
+final class ExperimentRule extends CompiledRule {
+
+    private final boolean enabled;
+    private final String hashAttribute;
+    private final HashSeed seed;
+    private final HashFilter namespace;
+    private final double[][] ranges;
+    /**
+     * Result per variation; null for passthrough variations, which fall through to the next rule.
+     */
+    private final EvaluationResult[] results;
+
+    ExperimentRule(String featureKey, Map<String, Object> rule, boolean enabled) {
+        super(rule);
+        List<?> variations = (List<?>) rule.get("variations");
+        String experimentKey = string(rule, "key", featureKey);
+        String ruleId = string(rule, "id", null);
+
+        this.enabled = enabled;
+        this.hashAttribute = string(rule, "hashAttribute", "id");
+        this.seed = new HashSeed(string(rule, "seed", experimentKey), integer(rule, "hashVersion", 1));
+        this.namespace = hasFilters() ? null : HashFilter.namespace(hashAttribute, rule.get("namespace"));
+        this.ranges = rule.get("ranges") instanceof List<?> explicit && explicit.size() == variations.size()
+                ? explicit.stream().map(CompiledRule::range).toArray(double[][]::new)
+                : bucketRanges(variations.size(), coverage(rule), rule.get("weights"));
+
+        List<?> meta = rule.get("meta") instanceof List<?> list ? list : List.of();
+        this.results = new EvaluationResult[variations.size()];
+        for (int i = 0; i < variations.size(); i++) {
+            boolean passthrough = i < meta.size() && meta.get(i) instanceof Map<?, ?> m
+                    && Boolean.TRUE.equals(m.get("passthrough"));
+            results[i] = passthrough ? null
+                    : new EvaluationResult(variations.get(i), EvaluationSource.EXPERIMENT, ruleId, experimentKey, i,
+                            hashAttribute);
+        }
+    }
+
+    @Override
+    EvaluationResult evaluate(Map<String, Object> attributes) {
+        if (results.length < 2 || !enabled || !matches(attributes)) {
+            return null;
+        }
+        String hashValue = hashValue(attributes, hashAttribute);
+        if (hashValue == null) {
+            return null;
+        }
+        if (namespace != null && !namespace.includes(attributes)) {
+            return null;
+        }
+        double n = seed.hash(hashValue);
+        if (n < 0) {
+            return null;
+        }
+        for (int i = 0; i < ranges.length; i++) {
+            double[] range = ranges[i];
+            if (range != null && n >= range[0] && n < range[1]) {
+                return results[i];
+            }
+        }
+        return null;
+    }
+
+    private static double coverage(Map<String, Object> rule) {
+        return rule.get("coverage") instanceof Number number ? number.doubleValue() : 1;
+    }
+
+    /**
+     * GrowthBook's getBucketRanges: falls back to equal weights when the given ones are unusable.
+     */
+    static double[][] bucketRanges(int variations, double coverage, Object weights) {
+        double clamped = Math.max(0, Math.min(1, coverage));
+        double[] w = new double[variations];
+        boolean useEqual = true;
+        if (weights instanceof List<?> list && list.size() == variations) {
+            double total = 0;
+            boolean numeric = true;
+            for (int i = 0; i < variations; i++) {
+                if (list.get(i) instanceof Number number) {
+                    w[i] = number.doubleValue();
+                    total += w[i];
+                } else {
+                    numeric = false;
+                }
+            }
+            useEqual = !numeric || total < 0.99 || total > 1.01;
+        }
+        if (useEqual) {
+            for (int i = 0; i < variations; i++) {
+                w[i] = 1.0 / variations;
+            }
+        }
+        double[][] ranges = new double[variations][];
+        double cumulative = 0;
+        for (int i = 0; i < variations; i++) {
+            double start = cumulative;
+            cumulative += w[i];
+            ranges[i] = new double[]{start, start + clamped * w[i]};
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,51 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.Map;
+
+/**
+ * A force rule, optionally limited to a percentage rollout (coverage or range).
+ */
+final class ForceRule extends CompiledRule {
+
+    private final EvaluationResult result;
+    private final boolean rollout;
+    private final String hashAttribute;
+    private final HashSeed seed;
+    private final double[] range;
+    private final double coverage;
+
+    ForceRule(String featureKey, Map<String, Object> rule) {
+        super(rule);
+        this.result = new EvaluationResult(rule.get("force"), EvaluationSource.FORCE,
+                string(rule, "id", null), null, -1);
+        this.range = range(rule.get("range"));
+        this.coverage = rule.get("coverage") instanceof Number number ? number.doubleValue() : Double.NaN;
+        this.rollout = range != null || !Double.isNaN(coverage);
+        this.hashAttribute = string(rule, "hashAttribute", "id");
+        this.seed = new HashSeed(string(rule, "seed", featureKey), integer(rule, "hashVersion", 1));
+    }
+
+    @Override
+    EvaluationResult evaluate(Map<String, Object> attributes) {
+        if (!matches(attributes) || !inRollout(attributes)) {
+            return null;
+        }
+        return result;
+    }
+
+    private boolean inRollout(Map<String, Object> attributes) {
+        if (!rollout) {
+            return true;
+        }
+        String hashValue = hashValue(attributes, hashAttribute);
+        if (hashValue == null) {
+            return false;
+        }
+        double n = seed.hash(hashValue);
+        if (n < 0 || coverage == 0) {
+            // With n <= coverage a hash of exactly 0 would still be let in
+            return false;
+        }
+        return range != null ? n >= range[0] && n < range[1] : n <= coverage;
+    }
+}
@@ -0,0 +1,81 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rule filter: the user is kept only when the hash of an attribute falls in one of the ranges.
+ * Also used for experiment namespaces, which are a single-range filter with a derived seed.
+ */
+final class HashFilter {
+
+    private static final HashFilter[] NONE = new HashFilter[0];
+
+    private final String attribute;
+    private final HashSeed seed;
+    private final double[][] ranges;
+
+    HashFilter(String attribute, HashSeed seed, double[][] ranges) {
+        this.attribute = attribute;
+        this.seed = seed;
+        this.ranges = ranges;
+    }
+
+    static HashFilter[] compileAll(Object filters) {
+        if (!(filters instanceof List<?> list) || list.isEmpty()) {
+            return NONE;
+        }
+        List<HashFilter> compiled = new ArrayList<>(list.size());
+        for (Object item : list) {
+            if (item instanceof Map<?, ?> raw) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> filter = (Map<String, Object>) raw;
+                List<double[]> ranges = new ArrayList<>();
+                if (filter.get("ranges") instanceof List<?> rangeList) {
+                    rangeList.forEach(range -> {
+                        double[] parsed = CompiledRule.range(range);
+                        if (parsed != null) {
+                            ranges.add(parsed);
+                        }
+                    });
+                }
+                compiled.add(new HashFilter(
+                        CompiledRule.string(filter, "attribute", "id"),
+                        new HashSeed(CompiledRule.string(filter, "seed", ""), CompiledRule.integer(filter, "hashVersion", 2)),
+                        ranges.toArray(double[][]::new)));
+            }
+        }
+        return compiled.toArray(HashFilter[]::new);
+    }
+
+    /**
+     * GrowthBook namespace [id, start, end], or null when the value is not a namespace.
+     */
+    static HashFilter namespace(String hashAttribute, Object namespace) {
+        if (namespace instanceof List<?> list && list.size() == 3
+                && list.get(0) instanceof String id
+                && list.get(1) instanceof Number start && list.get(2) instanceof Number end) {
+            return new HashFilter(hashAttribute, new HashSeed("__" + id, 1),
+                    new double[][]{{start.doubleValue(), end.doubleValue()}});
+        }
+        return null;
+    }
+
+    boolean includes(Map<String, Object> attributes) {
+        String hashValue = CompiledRule.hashValue(attributes, attribute);
+        if (hashValue == null) {
+            return false;
+        }
+        double n = seed.hash(hashValue);
+        if (n < 0) {
+            return false;
+        }
+        for (double[] range : ranges) {
+            if (n >= range[0] && n < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
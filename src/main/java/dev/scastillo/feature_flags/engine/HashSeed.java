@@ -0,0 +1,63 @@
+package dev.scastillo.feature_flags.engine;
+
+/**
+ * GrowthBook's FNV-1a 32 bit bucketing hash, bound to one seed and hash version.
+ * For version 2 the seed is a prefix, so its FNV state is computed once at compile
+ * time; hashing a value then walks only the value's characters and never allocates.
+ */
+final class HashSeed {
+
+    private static final int FNV_OFFSET = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final String seed;
+    private final int hashVersion;
+    private final int seedState;
+
+    HashSeed(String seed, int hashVersion) {
+        this.seed = seed;
+        this.hashVersion = hashVersion;
+        this.seedState = update(FNV_OFFSET, seed);
+    }
+
+    /**
+     * Hash of the value in [0, 1), or -1 for an unsupported hash version.
+     */
+    double hash(String value) {
+        if (hashVersion == 2) {
+            int first = update(seedState, value);
+            int second = updateUnsignedDecimal(FNV_OFFSET, first);
+            return Integer.toUnsignedLong(second) % 10000 / 10000.0;
+        }
+        if (hashVersion == 1) {
+            int state = update(update(FNV_OFFSET, value), seed);
+            return Integer.toUnsignedLong(state) % 1000 / 1000.0;
+        }
+        return -1;
+    }
+
+    private static int update(int state, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            state ^= value.charAt(i);
+            state *= FNV_PRIME;
+        }
+        return state;
+    }
+
+    /**
+     * Feeds the decimal digits of the unsigned value, as String(hash) would, without building the string.
+     */
+    private static int updateUnsignedDecimal(int state, int value) {
+        long unsigned = Integer.toUnsignedLong(value);
+        long divisor = 1;
+        while (divisor * 10 <= unsigned) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            state ^= '0' + (int) (unsigned / divisor % 10);
+            state *= FNV_PRIME;
+            divisor /= 10;
+        }
+        return state;
+    }
+}
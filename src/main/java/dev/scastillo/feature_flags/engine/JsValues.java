@@ -0,0 +1,302 @@
+package dev.scastillo.feature_flags.engine;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * JavaScript value semantics used by GrowthBook's evaluation spec, applied to plain Java values
+ * (null, Boolean, Number, String, List, Map) as they arrive from request attributes.
+ */
+public final class JsValues {
+
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("[+-]?(Infinity|(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?)");
+    private static final Pattern HEX_LITERAL = Pattern.compile("0[xX][0-9a-fA-F]{1,15}");
+
+    private JsValues() {
+    }
+
+    /**
+     * Converts a Gson tree into immutable plain Java values, once, at compile time.
+     */
+    public static Object toJava(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+            if (primitive.isNumber()) {
+                return toNumber(primitive.getAsBigDecimal());
+            }
+            return primitive.getAsString();
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            List<Object> list = new ArrayList<>(array.size());
+            array.forEach(item -> list.add(toJava(item)));
+            return Collections.unmodifiableList(list);
+        }
+        JsonObject object = element.getAsJsonObject();
+        Map<String, Object> map = new LinkedHashMap<>();
+        object.entrySet().forEach(entry -> map.put(entry.getKey(), toJava(entry.getValue())));
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static Number toNumber(BigDecimal decimal) {
+        if (decimal.scale() <= 0 || decimal.stripTrailingZeros().scale() <= 0) {
+            try {
+                return decimal.longValueExact();
+            } catch (ArithmeticException e) {
+                return decimal.doubleValue();
+            }
+        }
+        return decimal.doubleValue();
+    }
+
+    /**
+     * JavaScript truthiness: null, false, 0, NaN and "" are falsy.
+     */
+    public static boolean isTruthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        if (value instanceof Number number) {
+            double d = number.doubleValue();
+            return d != 0 && !Double.isNaN(d);
+        }
+        if (value instanceof String string) {
+            return !string.isEmpty();
+        }
+        return true;
+    }
+
+    /**
+     * JavaScript String(value) for a hash attribute, or null when the value is falsy.
+     */
+    static String toHashString(Object value) {
+        if (!isTruthy(value)) {
+            return null;
+        }
+        if (value instanceof String string) {
+            return string;
+        }
+        if (value instanceof Number number) {
+            return numberToString(number);
+        }
+        return String.valueOf(value);
+    }
+
+    static String numberToString(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return number.toString();
+        }
+        double d = number.doubleValue();
+        if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 1e21) {
+            return Long.toString((long) d);
+        }
+        return Double.toString(d);
+    }
+
+    /**
+     * GrowthBook's getType(): null, array, string, number, boolean or object.
+     */
+    static String typeOf(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof List) {
+            return "array";
+        }
+        if (value instanceof String) {
+            return "string";
+        }
+        if (value instanceof Number) {
+            return "number";
+        }
+        if (value instanceof Boolean) {
+            return "boolean";
+        }
+        return "object";
+    }
+
+    /**
+     * Strict equality (===) for primitives. Objects and arrays are never strictly equal.
+     */
+    static boolean strictEquals(Object actual, Object expected) {
+        if (actual == null || expected == null) {
+            return actual == expected;
+        }
+        if (actual instanceof Number a && expected instanceof Number b) {
+            return a.doubleValue() == b.doubleValue();
+        }
+        if (actual instanceof String || actual instanceof Boolean) {
+            return actual.equals(expected);
+        }
+        return false;
+    }
+
+    /**
+     * GrowthBook's evalConditionValue for a plain condition value: a string, number or boolean
+     * condition coerces the attribute first (String(value), value * 1, !!value on a non-null value);
+     * null, arrays and objects compare as JSON.
+     */
+    static boolean conditionEquals(Object actual, Object expected) {
+        if (expected instanceof String string) {
+            return string.equals(toJsString(actual));
+        }
+        if (expected instanceof Number number) {
+            return multiplyByOne(actual) == number.doubleValue();
+        }
+        if (expected instanceof Boolean bool) {
+            return actual != null && isTruthy(actual) == bool;
+        }
+        return deepEquals(actual, expected);
+    }
+
+    /**
+     * Structural equality, equivalent to comparing JSON.stringify() output.
+     */
+    static boolean deepEquals(Object actual, Object expected) {
+        if (actual instanceof List<?> a && expected instanceof List<?> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!deepEquals(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (actual instanceof Map<?, ?> a && expected instanceof Map<?, ?> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (Map.Entry<?, ?> entry : b.entrySet()) {
+                if (!a.containsKey(entry.getKey()) || !deepEquals(a.get(entry.getKey()), entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return strictEquals(actual, expected);
+    }
+
+    /**
+     * JavaScript String(value)
+     */
+    static String toJsString(Object value) {
+        if (value instanceof String string) {
+            return string;
+        }
+        if (value instanceof Number number) {
+            return numberToString(number);
+        }
+        if (value instanceof List<?> list) {
+            StringBuilder joined = new StringBuilder();
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) {
+                    joined.append(',');
+                }
+                Object item = list.get(i);
+                if (item != null) {
+                    joined.append(toJsString(item));
+                }
+            }
+            return joined.toString();
+        }
+        if (value instanceof Map) {
+            return "[object Object]";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Relational comparison with JavaScript coercion. Returns null when the
+     * comparison is undefined (NaN involved), which makes every operator false.
+     */
+    static Integer compare(Object actual, Object expected) {
+        if (actual instanceof String a && expected instanceof String b) {
+            return Integer.signum(a.compareTo(b));
+        }
+        double a = toNumber(actual);
+        double b = toNumber(expected);
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            return null;
+        }
+        return a == b ? 0 : (a < b ? -1 : 1);
+    }
+
+    /**
+     * JavaScript value * 1: unlike relational comparison, null counts as 0 and a one-item array as its item
+     */
+    private static double multiplyByOne(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof List<?> list) {
+            if (list.isEmpty()) {
+                return 0;
+            }
+            return list.size() == 1 ? toNumber(toJsString(list.get(0))) : Double.NaN;
+        }
+        return toNumber(value);
+    }
+
+    private static double toNumber(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof Boolean bool) {
+            return bool ? 1 : 0;
+        }
+        if (value instanceof String string) {
+            String trimmed = string.trim();
+            if (trimmed.isEmpty()) {
+                return 0;
+            }
+            if (HEX_LITERAL.matcher(trimmed).matches()) {
+                return Long.parseLong(trimmed.substring(2), 16);
+            }
+            // Double.parseDouble also takes "1d", "0x1p3" or "NaN", which JavaScript does not
+            return NUMBER_LITERAL.matcher(trimmed).matches() ? Double.parseDouble(trimmed) : Double.NaN;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * GrowthBook's paddedVersionString: numeric parts left-padded so versions compare as strings.
+     */
+    static String paddedVersion(String input) {
+        String stripped = input.replaceAll("(^v|\\+.*$)", "");
+        String[] parts = stripped.split("[-.]");
+        StringBuilder padded = new StringBuilder(stripped.length() + 16);
+        int count = parts.length == 3 ? 4 : parts.length;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                padded.append('-');
+            }
+            String part = i < parts.length ? parts[i] : "~";
+            if (!part.isEmpty() && part.chars().allMatch(Character::isDigit)) {
+                padded.append(" ".repeat(Math.max(0, 5 - part.length())));
+            }
+            padded.append(part);
+        }
+        return padded.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package dev.scastillo.feature_flags.engine;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Operand list of $in / $nin with JavaScript strict equality. Short lists are scanned;
+ * from {@link #INDEX_THRESHOLD} members on, strings go into a hash set and numbers into a
+ * sorted double[] (the same comparison {@link JsValues#strictEquals} makes), built once per
+ * snapshot so a membership check no longer depends on the list size. Both paths give the same
+ * answer: null only matches a null member, and anything that is not a primitive matches nothing.
+ */
+final class MemberSet {
+
+    static final int INDEX_THRESHOLD = 16;
+
+    private final Object[] members;
+    private final Set<String> strings;
+    private final double[] numbers;
+    private final boolean hasTrue;
+    private final boolean hasFalse;
+    private final boolean hasNull;
+    private final long estimatedBytes;
+
+    private MemberSet(Object[] members) {
+        this.members = members;
+        this.strings = null;
+        this.numbers = null;
+        this.hasTrue = false;
+        this.hasFalse = false;
+        this.hasNull = false;
+        this.estimatedBytes = 16 + 4L * members.length;
+    }
+
+    private MemberSet(Set<String> strings, double[] numbers, boolean hasTrue, boolean hasFalse, boolean hasNull,
+                      long estimatedBytes) {
+        this.members = null;
+        this.strings = strings;
+        this.numbers = numbers;
+        this.hasTrue = hasTrue;
+        this.hasFalse = hasFalse;
+        this.hasNull = hasNull;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    static MemberSet of(Object[] members) {
+        if (members.length < INDEX_THRESHOLD) {
+            return new MemberSet(members);
+        }
+        Set<String> strings = new HashSet<>(Math.max(16, (int) (members.length / 0.75f) + 1));
+        double[] numbers = new double[members.length];
+        int numberCount = 0;
+        boolean hasTrue = false;
+        boolean hasFalse = false;
+        boolean hasNull = false;
+        long stringBytes = 0;
+        for (Object member : members) {
+            if (member instanceof String string) {
+                if (strings.add(string)) {
+                    // HashMap node + String header + Latin-1 backing array
+                    stringBytes += 32 + 24 + align(16 + string.length());
+                }
+            } else if (member instanceof Number number) {
+                double d = normalize(number);
+                if (!Double.isNaN(d)) {
+                    numbers[numberCount++] = d;
+                }
+            } else if (member instanceof Boolean bool) {
+                hasTrue |= bool;
+                hasFalse |= !bool;
+            } else if (member == null) {
+                hasNull = true;
+            }
+            // Objects and arrays are never strictly equal to anything
+        }
+        numbers = Arrays.copyOf(numbers, numberCount);
+        Arrays.sort(numbers);
+        long bytes = 64 + stringBytes + 4L * tableSize(strings.size()) + 16 + 8L * numbers.length;
+        return new MemberSet(strings.isEmpty() ? Set.of() : strings, numbers, hasTrue, hasFalse, hasNull, bytes);
+    }
+
+    boolean contains(Object value) {
+        if (members != null) {
+            for (Object member : members) {
+                if (JsValues.strictEquals(value, member)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (value == null) {
+            return hasNull;
+        }
+        if (value instanceof String string) {
+            return strings.contains(string);
+        }
+        if (value instanceof Number number) {
+            double d = normalize(number);
+            return !Double.isNaN(d) && Arrays.binarySearch(numbers, d) >= 0;
+        }
+        if (value instanceof Boolean bool) {
+            return bool ? hasTrue : hasFalse;
+        }
+        return false;
+    }
+
+    boolean isIndexed() {
+        return members == null;
+    }
+
+    /**
+     * Approximate heap held by this operand list, for reporting
+     */
+    long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * -0.0 and 0.0 are strictly equal but ordered apart by Arrays.binarySearch
+     */
+    private static double normalize(Number number) {
+        return number.doubleValue() + 0.0;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static int tableSize(int entries) {
+        return Integer.highestOneBit(Math.max(16, (int) (entries / 0.75f) + 1) * 2 - 1);
+    }
+}
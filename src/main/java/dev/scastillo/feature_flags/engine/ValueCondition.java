@@ -0,0 +1,10 @@
+package dev.scastillo.feature_flags.engine;
+
+/**
+ * A precompiled condition on a single attribute value (the right-hand side of a condition key).
+ */
+@FunctionalInterface
+interface ValueCondition {
+
+    boolean test(Object value);
+}
@@ -0,0 +1,167 @@
+package dev.scastillo.feature_flags.metrics;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.engine.CompiledFeatures;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for evaluations and refreshes, exported through Actuator (/actuator/prometheus).
+ * The feature tag is bounded: only keys present in the current snapshot are used as tag values,
+ * up to growthbook.metrics.max-feature-tags of them; anything else is tagged "unknown" or "other",
+ * so arbitrary keys sent by clients can't grow the number of series.
+ */
+@Component
+public class FeatureFlagMetrics {
+
+    public static final String ALL_FEATURES = "all";
+    static final String UNKNOWN = "unknown";
+    static final String OTHER = "other";
+
+    /**
+     * Fixed latency buckets: a full percentile histogram per endpoint and feature would be far more series
+     */
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofNanos(50_000), Duration.ofNanos(100_000), Duration.ofNanos(250_000),
+            Duration.ofNanos(500_000), Duration.ofMillis(1), Duration.ofMillis(5),
+            Duration.ofMillis(25), Duration.ofMillis(100)
+    };
+
+    private final MeterRegistry registry;
+    private final FeatureSnapshotHolder snapshotHolder;
+    private final int maxFeatureTags;
+    private final Map<String, String> featureTags = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Timer>> evaluationTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> fallbackCounters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> refreshTimers = new ConcurrentHashMap<>();
+    private final DistributionSummary payloadBytes;
+    private final MultiGauge conditionIndexBytes;
+
+    public FeatureFlagMetrics(MeterRegistry registry, FeatureSnapshotHolder snapshotHolder,
+                              GrowthBookProperties properties) {
+        this.registry = registry;
+        this.snapshotHolder = snapshotHolder;
+        this.maxFeatureTags = properties.getMetrics().getMaxFeatureTags();
+        this.payloadBytes = DistributionSummary.builder("feature_flags.refresh.payload")
+                .description("Size of downloaded features payloads")
+                .baseUnit("bytes")
+                .register(registry);
+
+        Gauge.builder("feature_flags.snapshot.features", snapshotHolder, holder -> holder.current().getFeatureKeys().size())
+                .description("Features in the current snapshot")
+                .register(registry);
+        Gauge.builder("feature_flags.snapshot.version", snapshotHolder, holder -> holder.current().getVersion())
+                .description("Version of the current snapshot")
+                .register(registry);
+        Gauge.builder("feature_flags.snapshot.age", snapshotHolder, FeatureFlagMetrics::snapshotAgeSeconds)
+                .description("Time since the current snapshot was fetched or last confirmed unchanged")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("feature_flags.snapshot.condition_index", snapshotHolder, FeatureFlagMetrics::totalConditionIndexBytes)
+                .description("Approximate heap held by hash-indexed $in/$nin lists of the compiled engine")
+                .baseUnit("bytes")
+                .register(registry);
+        this.conditionIndexBytes = MultiGauge.builder("feature_flags.snapshot.condition_index.feature")
+                .description("Approximate heap held by hash-indexed $in/$nin lists, per feature")
+                .baseUnit("bytes")
+                .register(registry);
+        recordConditionIndexes(snapshotHolder.current());
+        snapshotHolder.addListener((previous, current) -> recordConditionIndexes(current));
+    }
+
+    /**
+     * Latency of one evaluation call, tagged by endpoint and (bounded) feature key
+     */
+    public void recordEvaluation(String endpoint, String featureKey, long nanos) {
+        String feature = ALL_FEATURES.equals(featureKey) ? ALL_FEATURES : featureTag(featureKey);
+        evaluationTimers.computeIfAbsent(endpoint, e -> new ConcurrentHashMap<>())
+                .computeIfAbsent(feature, f -> Timer.builder("feature_flags.evaluation")
+                        .description("Feature evaluation latency")
+                        .tag("endpoint", endpoint)
+                        .tag("feature", f)
+                        .serviceLevelObjectives(LATENCY_BUCKETS)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A caller got its fallback value because evaluation failed
+     */
+    public void recordFallback(String featureKey) {
+        fallbackCounters.computeIfAbsent(featureTag(featureKey), feature -> Counter.builder("feature_flags.fallback")
+                        .description("Evaluations answered with the caller's fallback value after an error")
+                        .tag("feature", feature)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Duration of one refresh, tagged with how it ended (applied, not_modified, unchanged, webhook, failed)
+     */
+    public void recordRefresh(String outcome, long nanos) {
+        refreshTimers.computeIfAbsent(outcome, o -> Timer.builder("feature_flags.refresh")
+                        .description("Feature refresh duration")
+                        .tag("outcome", o)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPayloadBytes(long bytes) {
+        payloadBytes.record(bytes);
+    }
+
+    /**
+     * One row per feature with indexed lists, the largest first, up to the feature tag limit
+     */
+    private void recordConditionIndexes(FeatureSnapshot snapshot) {
+        CompiledFeatures compiled = snapshot.getCompiledFeatures();
+        List<MultiGauge.Row<?>> rows = compiled == null ? List.of() : compiled.indexBytesByFeature().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(maxFeatureTags)
+                .<MultiGauge.Row<?>>map(entry -> MultiGauge.Row.of(Tags.of("feature", entry.getKey()), entry.getValue()))
+                .toList();
+        conditionIndexBytes.register(rows, true);
+    }
+
+    private static double totalConditionIndexBytes(FeatureSnapshotHolder holder) {
+        CompiledFeatures compiled = holder.current().getCompiledFeatures();
+        return compiled != null ? compiled.indexBytes() : 0;
+    }
+
+    String featureTag(String featureKey) {
+        if (featureKey == null) {
+            return UNKNOWN;
+        }
+        String tag = featureTags.get(featureKey);
+        if (tag != null) {
+            return tag;
+        }
+        if (!snapshotHolder.current().getFeatureKeys().contains(featureKey)) {
+            return UNKNOWN;
+        }
+        if (featureTags.size() >= maxFeatureTags) {
+            return OTHER;
+        }
+        return featureTags.computeIfAbsent(featureKey, key -> key);
+    }
+
+    private static double snapshotAgeSeconds(FeatureSnapshotHolder holder) {
+        FeatureSnapshot snapshot = holder.current();
+        return Duration.between(snapshot.getFetchedAt(), Instant.now()).toMillis() / 1000.0;
+    }
+}
@@ -1,45 +1,99 @@
 package dev.scastillo.feature_flags.scheduler;
 
-import dev.scastillo.feature_flags.client.GrowthBookClient;
 import dev.scastillo.feature_flags.config.GrowthBookProperties;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * Scheduler that automatically refreshes GrowthBook features
- * based on the configured TTL (cache.ttl-seconds).
+ * Scheduler that automatically refreshes GrowthBook features about every cache.ttl-seconds.
+ * Each run schedules the next one with the delay from {@link RefreshSchedule}: jittered,
+ * backing off after failures, faster right after a webhook signal and slower while webhooks are healthy.
  */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 @ConditionalOnProperty(name = "growthbook.cache.enabled", havingValue = "true", matchIfMissing = true)
 public class GrowthBookRefreshScheduler {
 
-    private final GrowthBookClient growthBookClient;
+    private final RefreshCoordinator refreshCoordinator;
     private final GrowthBookProperties properties;
+    private final RefreshSchedule schedule;
+    private final ScheduledExecutorService executor;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    public GrowthBookRefreshScheduler(RefreshCoordinator refreshCoordinator, GrowthBookProperties properties) {
+        this.refreshCoordinator = refreshCoordinator;
+        this.properties = properties;
+        this.schedule = new RefreshSchedule(properties, () -> ThreadLocalRandom.current().nextDouble());
+        this.executor = Executors.newSingleThreadScheduledExecutor(properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("growthbook-refresh-scheduler").factory()
+                : Thread.ofPlatform().daemon().name("growthbook-refresh-scheduler").factory());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Duration first = schedule.initialDelay();
+        log.info("Auto-refreshing GrowthBook features about every {}s, first in {}ms",
+                properties.getCache().getTtlSeconds(), first.toMillis());
+        scheduleNext(first);
+    }
 
     /**
-     * Refreshes features automatically.
-     * The fixed delay is calculated from growthbook.cache.ttl-seconds (in milliseconds).
-     * Default: 60 seconds.
+     * Refreshes features, then schedules the next run once this one has finished
      */
-    @Scheduled(fixedDelayString = "${growthbook.cache.ttl-seconds:60}000")
-    public void refreshFeatures() {
+    void refreshFeatures() {
         if (!properties.isEnabled()) {
             log.debug("GrowthBook is disabled, skipping feature refresh");
+            scheduleNext(nextDelay());
             return;
         }
 
+        log.debug("Auto-refreshing GrowthBook features (TTL: {}s)", properties.getCache().getTtlSeconds());
+        refreshCoordinator.requestRefresh("scheduler")
+                .whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        consecutiveFailures.set(0);
+                    } else {
+                        // Don't throw - we don't want to break the scheduler
+                        log.warn("Failed to auto-refresh GrowthBook features ({} in a row): {}",
+                                consecutiveFailures.incrementAndGet(), e.getMessage());
+                    }
+                    scheduleNext(nextDelay());
+                });
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    private Duration nextDelay() {
+        return schedule.nextDelay(consecutiveFailures.get(), refreshCoordinator.getLastWebhookSignal(),
+                refreshCoordinator.getLastWebhook(), Instant.now());
+    }
+
+    private void scheduleNext(Duration delay) {
         try {
-            log.debug("Auto-refreshing GrowthBook features (TTL: {}s)", properties.getCache().getTtlSeconds());
-            growthBookClient.refreshFeatures();
-        } catch (Exception e) {
-            log.warn("Failed to auto-refresh GrowthBook features: {}", e.getMessage());
-            // Don't throw - we don't want to break the scheduler
+            executor.schedule(this::refreshFeatures, delay.toMillis(), TimeUnit.MILLISECONDS);
+            log.debug("Next GrowthBook features refresh in {}ms", delay.toMillis());
+        } catch (RejectedExecutionException e) {
+            log.debug("Refresh scheduler is shut down, not scheduling another refresh");
         }
     }
-}
 
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
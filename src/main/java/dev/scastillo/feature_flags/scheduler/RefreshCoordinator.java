@@ -0,0 +1,176 @@
+package dev.scastillo.feature_flags.scheduler;
+
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.snapshot.SharedSnapshot;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single entry point for feature refreshes (webhook, scheduler, manual, startup).
+ * The first trigger schedules a refresh after the debounce window; every trigger
+ * that arrives before it starts joins that same refresh. Refreshes run one at a
+ * time on a dedicated thread, so a trigger arriving mid-fetch gets exactly one
+ * follow-up refresh instead of an overlapping one.
+ * Features pushed by a webhook are applied on that same thread, so a refresh in
+ * flight cannot publish over them.
+ */
+@Slf4j
+@Component
+public class RefreshCoordinator {
+
+    public static final String WEBHOOK = "webhook";
+
+    private final GrowthBookClient growthBookClient;
+    private final SharedSnapshot sharedSnapshot;
+    private final long debounceMs;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicLong triggers = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private volatile Instant lastWebhook;
+    private volatile Instant lastWebhookSignal;
+
+    // guarded by this
+    private CompletableFuture<Void> pending;
+    // webhook payloads waiting for the refresh thread
+    private final Set<CompletableFuture<Boolean>> queuedWebhooks = ConcurrentHashMap.newKeySet();
+
+    public RefreshCoordinator(GrowthBookClient growthBookClient, GrowthBookProperties properties,
+                              SharedSnapshot sharedSnapshot) {
+        this.growthBookClient = growthBookClient;
+        this.sharedSnapshot = sharedSnapshot;
+        this.debounceMs = properties.getRefresh().getDebounceMs();
+        this.executor = Executors.newSingleThreadScheduledExecutor(properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("growthbook-refresh").factory()
+                : Thread.ofPlatform().daemon().name("growthbook-refresh").factory());
+    }
+
+    /**
+     * Requests a refresh and returns a future completed when the refresh
+     * that covers this request has finished (exceptionally if it failed).
+     */
+    public CompletableFuture<Void> requestRefresh(String source) {
+        triggers.incrementAndGet();
+        if (WEBHOOK.equals(source)) {
+            recordWebhook(false);
+        }
+        synchronized (this) {
+            if (pending != null) {
+                merged.incrementAndGet();
+                log.debug("Refresh requested by {} merged into pending refresh", source);
+                return pending;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pending = future;
+            executor.schedule(() -> run(future), debounceMs, TimeUnit.MILLISECONDS);
+            log.debug("Refresh requested by {} scheduled in {}ms", source, debounceMs);
+            return future;
+        }
+    }
+
+    /**
+     * Applies the features carried by a webhook on the refresh thread, after any refresh
+     * already running. The future holds false when the payload carried no features.
+     */
+    public CompletableFuture<Boolean> applyWebhookPayload(byte[] payload) {
+        triggers.incrementAndGet();
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        queuedWebhooks.add(future);
+        executor.execute(() -> {
+            if (!queuedWebhooks.remove(future)) {
+                return;
+            }
+            try {
+                future.complete(growthBookClient.applyWebhookPayload(payload));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Notes a webhook: one carrying the features, or one only signaling that they changed
+     */
+    public void recordWebhook(boolean carriedFeatures) {
+        Instant now = Instant.now();
+        lastWebhook = now;
+        if (!carriedFeatures) {
+            lastWebhookSignal = now;
+        }
+    }
+
+    public Instant getLastWebhook() {
+        return lastWebhook;
+    }
+
+    public Instant getLastWebhookSignal() {
+        return lastWebhookSignal;
+    }
+
+    public long getTriggerCount() {
+        return triggers.get();
+    }
+
+    public long getMergedCount() {
+        return merged.get();
+    }
+
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    private void run(CompletableFuture<Void> future) {
+        synchronized (this) {
+            if (pending == future) {
+                pending = null;
+            }
+        }
+        executed.incrementAndGet();
+        try {
+            if (sharedSnapshot.isFollower()) {
+                // Another replica on this host fetches; take its latest snapshot instead
+                sharedSnapshot.sync();
+            } else {
+                growthBookClient.refreshFeatures();
+            }
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Stops the refresh thread. Callers still waiting on a refresh or webhook that had not started
+     * get an exception instead of waiting forever: shutdownNow drops those tasks without running them.
+     */
+    @PreDestroy
+    public void shutdown() {
+        FeatureFlagException stopped = new FeatureFlagException("Refresh coordinator shut down");
+        synchronized (this) {
+            if (pending != null) {
+                pending.completeExceptionally(stopped);
+                pending = null;
+            }
+        }
+        executor.shutdownNow();
+        for (CompletableFuture<Boolean> future : queuedWebhooks) {
+            if (queuedWebhooks.remove(future)) {
+                future.completeExceptionally(stopped);
+            }
+        }
+    }
+}
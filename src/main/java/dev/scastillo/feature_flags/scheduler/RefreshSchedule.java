@@ -0,0 +1,78 @@
+package dev.scastillo.feature_flags.scheduler;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Delay before the next scheduled refresh. Spreads a fleet's polls instead of firing them in step:
+ * <ul>
+ *     <li>each instance starts at a random point of the interval, and every interval is jittered</li>
+ *     <li>consecutive failures back off exponentially, up to max-backoff-steps doublings and max-backoff-seconds</li>
+ *     <li>right after a webhook that only signaled a change, polls fast for a short window to pick it up</li>
+ *     <li>while webhooks keep arriving they deliver the changes, so polling slows down</li>
+ * </ul>
+ */
+public class RefreshSchedule {
+
+    private final long intervalMs;
+    private final double jitterRatio;
+    private final long maxBackoffMs;
+    private final int maxBackoffSteps;
+    private final long fastPollMs;
+    private final Duration fastPollWindow;
+    private final Duration webhookHealthyWindow;
+    private final double webhookIntervalMultiplier;
+    private final DoubleSupplier random;
+
+    public RefreshSchedule(GrowthBookProperties properties, DoubleSupplier random) {
+        GrowthBookProperties.Refresh refresh = properties.getRefresh();
+        this.intervalMs = Math.max(1, properties.getCache().getTtlSeconds()) * 1000L;
+        this.jitterRatio = Math.max(0, Math.min(1, refresh.getJitterRatio()));
+        this.maxBackoffMs = Math.max(intervalMs, refresh.getMaxBackoffSeconds() * 1000L);
+        this.maxBackoffSteps = Math.max(0, Math.min(30, refresh.getMaxBackoffSteps()));
+        this.fastPollMs = Math.min(intervalMs, Math.max(1, refresh.getFastPollSeconds()) * 1000L);
+        this.fastPollWindow = Duration.ofSeconds(refresh.getFastPollWindowSeconds());
+        this.webhookHealthyWindow = Duration.ofSeconds(refresh.getWebhookHealthySeconds());
+        this.webhookIntervalMultiplier = Math.max(1, refresh.getWebhookIntervalMultiplier());
+        this.random = random;
+    }
+
+    /**
+     * Random phase within one interval, so instances started together don't poll together
+     */
+    public Duration initialDelay() {
+        return Duration.ofMillis((long) (intervalMs * random.getAsDouble()));
+    }
+
+    /**
+     * @param consecutiveFailures scheduled refreshes failed in a row
+     * @param lastWebhookSignal   last webhook that asked for a refresh without carrying features, or null
+     * @param lastWebhook         last webhook of any kind, or null
+     */
+    public Duration nextDelay(int consecutiveFailures, Instant lastWebhookSignal, Instant lastWebhook, Instant now) {
+        if (consecutiveFailures > 0) {
+            long backoff = Math.min(maxBackoffMs, intervalMs << Math.min(consecutiveFailures, maxBackoffSteps));
+            // Half fixed, half random: retries still back off but don't land at the same instant
+            return Duration.ofMillis(backoff / 2 + (long) (backoff / 2 * random.getAsDouble()));
+        }
+        if (within(lastWebhookSignal, fastPollWindow, now)) {
+            return jittered(fastPollMs);
+        }
+        if (within(lastWebhook, webhookHealthyWindow, now)) {
+            return jittered((long) (intervalMs * webhookIntervalMultiplier));
+        }
+        return jittered(intervalMs);
+    }
+
+    private Duration jittered(long delayMs) {
+        double factor = 1 + jitterRatio * (2 * random.getAsDouble() - 1);
+        return Duration.ofMillis(Math.max(1, Math.round(delayMs * factor)));
+    }
+
+    private static boolean within(Instant since, Duration window, Instant now) {
+        return since != null && now.isBefore(since.plus(window));
+    }
+}
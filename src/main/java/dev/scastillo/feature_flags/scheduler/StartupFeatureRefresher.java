@@ -0,0 +1,40 @@
+package dev.scastillo.feature_flags.scheduler;
+
+import dev.scastillo.feature_flags.snapshot.SharedSnapshot;
+import dev.scastillo.feature_flags.snapshot.SnapshotStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * When the service started from the snapshot on disk, fetches live features
+ * in the background once the application is ready, instead of during startup.
+ * Same for the leader of a shared snapshot, which may have started from the shared file.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "growthbook.enabled", havingValue = "true", matchIfMissing = true)
+public class StartupFeatureRefresher {
+
+    private final RefreshCoordinator refreshCoordinator;
+    private final SnapshotStore snapshotStore;
+    private final SharedSnapshot sharedSnapshot;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshAfterStartup() {
+        if (!snapshotStore.isRestored() && !sharedSnapshot.isLeader()) {
+            return;
+        }
+        // A shared-snapshot leader may have started from a previous leader's features
+        log.info("Started from persisted features, fetching live features in the background");
+        refreshCoordinator.requestRefresh("startup")
+                .exceptionally(e -> {
+                    log.warn("Background refresh after startup failed, serving persisted features: {}", e.getMessage());
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,88 @@
+package dev.scastillo.feature_flags.security;
+
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Verifies the X-GrowthBook-Signature header: hex HMAC-SHA256 of the raw body, keyed with the webhook secret.
+ * The key is set up once in a prototype Mac; each call works on a clone of it, which skips the provider lookup
+ * and key initialization and stays safe with any number of request threads.
+ */
+@Component
+public class WebhookSignatureVerifier {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String PREFIX = "sha256=";
+
+    private final SecretKeySpec key;
+    private final Mac prototype;
+
+    public WebhookSignatureVerifier(@Value("${growthbook.webhook.secret:}") String secret) {
+        if (secret == null || secret.isEmpty()) {
+            this.key = null;
+            this.prototype = null;
+            return;
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        try {
+            this.prototype = Mac.getInstance(ALGORITHM);
+            this.prototype.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new FeatureFlagException("Cannot initialize webhook signature verification", e);
+        }
+    }
+
+    /**
+     * Whether a webhook secret is configured
+     */
+    public boolean isEnabled() {
+        return prototype != null;
+    }
+
+    /**
+     * Constant-time check of the signature against the payload. Always true when no secret is configured.
+     */
+    public boolean verify(String signature, byte[] payload) {
+        if (!isEnabled()) {
+            return true;
+        }
+        if (signature == null || signature.isBlank()) {
+            return false;
+        }
+        String hex = signature.trim();
+        if (hex.startsWith(PREFIX)) {
+            hex = hex.substring(PREFIX.length());
+        }
+
+        byte[] expected;
+        try {
+            expected = HexFormat.of().parseHex(hex);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        byte[] actual = newMac().doFinal(payload == null ? new byte[0] : payload);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new FeatureFlagException("Cannot initialize webhook signature verification", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.scastillo.feature_flags.service;
+
+import dev.scastillo.feature_flags.dto.request.FeatureEvaluationRequest;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Parses one CSV row of user attributes, given the header row. Columns userId (or id), deviceType,
+ * browser and country fill the request fields; any other column becomes a custom attribute.
+ * Empty cells are left out, and true/false and numbers are typed so conditions compare them as such.
+ * Digits with a leading zero (zip codes, padded IDs) or beyond 15 digits (past what a JSON number
+ * holds exactly) stay strings, as they would arrive from live traffic.
+ * Quoted cells may contain commas and doubled quotes, but not line breaks.
+ */
+public final class CsvUserParser implements Function<String, FeatureEvaluationRequest> {
+
+    private static final Pattern INTEGER = Pattern.compile("-?(0|[1-9]\\d{0,14})");
+    private static final Pattern DECIMAL = Pattern.compile("-?(0|[1-9]\\d*)\\.\\d+([eE][-+]?\\d+)?");
+
+    private final String[] columns;
+
+    public CsvUserParser(String headerRow) {
+        this.columns = split(headerRow).stream().map(String::trim).toArray(String[]::new);
+    }
+
+    @Override
+    public FeatureEvaluationRequest apply(String row) {
+        List<String> cells = split(row);
+        if (cells.size() > columns.length) {
+            throw new FeatureFlagException("CSV row has " + cells.size() + " cells, header has " + columns.length);
+        }
+        FeatureEvaluationRequest request = new FeatureEvaluationRequest();
+        Map<String, Object> custom = new HashMap<>();
+        for (int i = 0; i < cells.size(); i++) {
+            String cell = cells.get(i);
+            if (cell.isEmpty()) {
+                continue;
+            }
+            switch (columns[i]) {
+                case "userId", "id" -> request.setUserId(cell);
+                case "deviceType" -> request.setDeviceType(cell);
+                case "browser" -> request.setBrowser(cell);
+                case "country" -> request.setCountry(cell);
+                default -> custom.put(columns[i], typed(cell));
+            }
+        }
+        request.setCustomAttributes(custom);
+        return request;
+    }
+
+    private static Object typed(String cell) {
+        if (cell.equals("true") || cell.equals("false")) {
+            return Boolean.valueOf(cell);
+        }
+        if (INTEGER.matcher(cell).matches()) {
+            return Long.parseLong(cell);
+        }
+        if (DECIMAL.matcher(cell).matches()) {
+            return Double.parseDouble(cell);
+        }
+        return cell;
+    }
+
+    static List<String> split(String row) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else if (c != '\r') {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
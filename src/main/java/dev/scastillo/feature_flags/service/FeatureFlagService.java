@@ -1,46 +1,85 @@
 package dev.scastillo.feature_flags.service;
 
+import dev.scastillo.feature_flags.cache.BootstrapPayloadCache;
+import dev.scastillo.feature_flags.cache.EvaluationCache;
+import dev.scastillo.feature_flags.client.FeatureEvaluation;
 import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.dto.request.BatchFeatureEvaluationRequest;
 import dev.scastillo.feature_flags.dto.request.FeatureEvaluationRequest;
+import dev.scastillo.feature_flags.dto.response.BatchFeatureResponse;
+import dev.scastillo.feature_flags.dto.response.BulkEvaluationResult;
+import dev.scastillo.feature_flags.dto.response.EvaluationCacheStatsResponse;
 import dev.scastillo.feature_flags.dto.response.FeatureResponse;
 import dev.scastillo.feature_flags.dto.response.FeatureValueResponse;
+import dev.scastillo.feature_flags.dto.response.RefreshStatsResponse;
+import dev.scastillo.feature_flags.dto.response.SimulationResponse;
+import dev.scastillo.feature_flags.engine.CompiledFeatures;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.scheduler.RefreshCoordinator;
+import dev.scastillo.feature_flags.snapshot.FeaturePayload;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.tenant.TenantContext;
+import dev.scastillo.feature_flags.tenant.TenantRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FeatureFlagService {
 
+    /**
+     * Upper bound of users being evaluated at once in a bulk job; keeps memory flat for large inputs.
+     */
+    private static final int BULK_MAX_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 4;
+
     private final GrowthBookClient growthBookClient;
+    private final EvaluationCache evaluationCache;
+    private final RefreshCoordinator refreshCoordinator;
+    private final FeatureFlagMetrics metrics;
+    private final TenantRegistry tenantRegistry;
+    private final BootstrapPayloadCache bootstrapPayloadCache;
 
     /**
      * Get feature status (enabled/disabled)
      */
     public FeatureResponse getFeature(String featureKey) {
         log.info("Getting feature: {}", featureKey);
-        
-        boolean isEnabled = growthBookClient.isFeatureEnabled(featureKey);
-        Object value = null;
-        
-        try {
-            var rawValue = growthBookClient.getFeatureValueRaw(featureKey);
-            if (rawValue != null && !rawValue.isJsonNull()) {
-                value = parseJsonElement(rawValue);
-            }
-        } catch (Exception e) {
-            log.debug("Could not get raw value for feature: {}", featureKey);
-        }
-        
+        long start = System.nanoTime();
+
+        GrowthBookClient client = client();
+        FeatureSnapshot snapshot = client.currentSnapshot();
+        FeatureEvaluation evaluation = client.evaluate(snapshot, featureKey);
+        metrics.recordEvaluation("feature", featureKey, System.nanoTime() - start);
+
         return FeatureResponse.builder()
                 .featureKey(featureKey)
-                .enabled(isEnabled)
-                .value(value)
+                .enabled(evaluation.isOn())
+                .value(evaluation.getValue())
                 .source("growthbook")
+                .valueSource(evaluation.getSource())
+                .ruleId(evaluation.getRuleId())
+                .experimentKey(evaluation.getExperimentKey())
+                .variationId(evaluation.getVariationId())
+                .snapshotVersion(snapshot.getVersion())
                 .build();
     }
 
@@ -49,25 +88,189 @@ public class FeatureFlagService {
      */
     public FeatureResponse evaluateFeature(String featureKey, FeatureEvaluationRequest request) {
         log.info("Evaluating feature '{}' with user attributes", featureKey);
+        long start = System.nanoTime();
         
         Map<String, Object> attributes = buildAttributes(request);
-        boolean isEnabled = growthBookClient.isFeatureEnabledForUser(featureKey, attributes);
+        GrowthBookClient client = client();
+        FeatureSnapshot snapshot = client.currentSnapshot();
+        // An experiment records the user's exposure on every evaluation, so it is never served from the cache
+        boolean isEnabled = snapshot.hasExperiment(featureKey)
+                ? client.isFeatureEnabledForUser(snapshot, featureKey, attributes)
+                : evaluationCache.get(
+                        new EvaluationCache.Key(featureKey, "enabled", attributes, snapshot.getVersion()),
+                        () -> client.isFeatureEnabledForUser(snapshot, featureKey, attributes));
+        metrics.recordEvaluation("evaluate", featureKey, System.nanoTime() - start);
         
         return FeatureResponse.builder()
                 .featureKey(featureKey)
                 .enabled(isEnabled)
                 .value(isEnabled)
                 .source("growthbook")
+                .snapshotVersion(snapshot.getVersion())
+                .build();
+    }
+
+    /**
+     * Evaluate many features for one user, building the attribute context once
+     */
+    public BatchFeatureResponse evaluateFeatures(BatchFeatureEvaluationRequest request) {
+        List<String> featureKeys = request.isAllFeatures() ? List.of() : request.getFeatureKeys();
+        log.info("Evaluating {} features with user attributes", request.isAllFeatures() ? "all" : featureKeys.size());
+
+        long start = System.nanoTime();
+        FeatureEvaluationRequest user = request.getAttributes() != null
+                ? request.getAttributes()
+                : new FeatureEvaluationRequest();
+        Map<String, Object> attributes = buildAttributes(user);
+        GrowthBookClient client = client();
+        FeatureSnapshot snapshot = client.currentSnapshot();
+        Map<String, Boolean> results = client.areFeaturesEnabledForUser(snapshot, featureKeys, attributes);
+        metrics.recordEvaluation("batch", FeatureFlagMetrics.ALL_FEATURES, System.nanoTime() - start);
+
+        List<FeatureResponse> features = new ArrayList<>(results.size());
+        results.forEach((featureKey, isEnabled) -> features.add(FeatureResponse.builder()
+                .featureKey(featureKey)
+                .enabled(isEnabled)
+                .value(isEnabled)
+                .source("growthbook")
+                .snapshotVersion(snapshot.getVersion())
+                .build()));
+
+        return BatchFeatureResponse.builder()
+                .count(features.size())
+                .features(features)
                 .build();
     }
 
+    /**
+     * Evaluate features for a stream of users in parallel against one shared snapshot.
+     * Results are handed to the sink as soon as each user is done (in completion order),
+     * so the sink must be thread-safe. A user that fails to evaluate, or a request the iterator
+     * cannot read (a {@link FeatureFlagException} from next()), becomes an error record.
+     * The first exception thrown by the sink itself stops the run: no more users are started,
+     * those in flight are not delivered, and the exception is rethrown once they have finished.
+     * Returns the number of users evaluated and delivered.
+     */
+    public long evaluateBulk(Iterator<FeatureEvaluationRequest> users, List<String> featureKeys,
+                             Consumer<BulkEvaluationResult> sink) {
+        GrowthBookClient client = client();
+        FeatureSnapshot snapshot = client.currentSnapshot();
+        List<String> keys = featureKeys == null ? List.of() : featureKeys;
+        log.info("Starting bulk evaluation of {} features", keys.isEmpty() ? "all" : keys.size());
+
+        Semaphore inFlight = new Semaphore(BULK_MAX_IN_FLIGHT);
+        AtomicLong evaluated = new AtomicLong();
+        AtomicReference<RuntimeException> sinkFailure = new AtomicReference<>();
+        long start = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (sinkFailure.get() == null && users.hasNext()) {
+                FeatureEvaluationRequest user;
+                try {
+                    user = users.next();
+                } catch (FeatureFlagException e) {
+                    log.debug("Skipping unreadable bulk evaluation request: {}", e.getMessage());
+                    deliver(sink, BulkEvaluationResult.builder().error(e.getMessage()).build(), sinkFailure);
+                    continue;
+                }
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        if (sinkFailure.get() == null
+                                && deliver(sink, evaluateBulkUser(client, snapshot, keys, user), sinkFailure)) {
+                            evaluated.incrementAndGet();
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        RuntimeException failure = sinkFailure.get();
+        if (failure != null) {
+            log.warn("Bulk evaluation stopped after {} users: {}", evaluated.get(), failure.getMessage());
+            throw failure;
+        }
+        log.info("Bulk evaluation finished: {} users in {}ms ({} users/s)",
+                evaluated.get(), elapsedMs, evaluated.get() * 1000 / elapsedMs);
+        return evaluated.get();
+    }
+
+    private BulkEvaluationResult evaluateBulkUser(GrowthBookClient client, FeatureSnapshot snapshot, List<String> keys,
+                                                  FeatureEvaluationRequest user) {
+        try {
+            long userStart = System.nanoTime();
+            Map<String, Boolean> results = client.areFeaturesEnabledForUser(snapshot, keys, buildAttributes(user));
+            metrics.recordEvaluation("bulk", FeatureFlagMetrics.ALL_FEATURES, System.nanoTime() - userStart);
+            return BulkEvaluationResult.builder()
+                    .userId(user.getUserId())
+                    .features(results)
+                    .build();
+        } catch (Exception e) {
+            log.debug("Bulk evaluation failed for user '{}': {}", user.getUserId(), e.getMessage());
+            return BulkEvaluationResult.builder()
+                    .userId(user.getUserId())
+                    .error(e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Hands one result to the sink unless it already failed; the first sink failure is kept
+     */
+    private static boolean deliver(Consumer<BulkEvaluationResult> sink, BulkEvaluationResult result,
+                                   AtomicReference<RuntimeException> sinkFailure) {
+        if (sinkFailure.get() != null) {
+            return false;
+        }
+        try {
+            sink.accept(result);
+            return result.getError() == null;
+        } catch (RuntimeException e) {
+            sinkFailure.compareAndSet(null, e);
+            return false;
+        }
+    }
+
+    /**
+     * Simulate a rollout offline: evaluate features for every user record and count the users per
+     * rule and variation. Runs against the current snapshot, or the supplied features when given,
+     * always with the compiled engine. Simulated users are not tracked as exposures.
+     */
+    public SimulationResponse simulate(Iterator<String> records, Function<String, FeatureEvaluationRequest> parser,
+                                       List<String> featureKeys, FeaturePayload suppliedFeatures) {
+        if (featureKeys == null || featureKeys.isEmpty()) {
+            throw new FeatureFlagException("At least one feature key is required for a simulation");
+        }
+        CompiledFeatures compiled;
+        Long snapshotVersion;
+        if (suppliedFeatures != null) {
+            compiled = CompiledFeatures.compile(suppliedFeatures.getFeatures(), true);
+            snapshotVersion = null;
+        } else {
+            FeatureSnapshot snapshot = client().currentSnapshot();
+            compiled = snapshot.getCompiledFeatures() != null
+                    ? snapshot.getCompiledFeatures()
+                    : CompiledFeatures.compile(snapshot.getFeaturesJson(), true);
+            snapshotVersion = snapshot.getVersion();
+        }
+        log.info("Simulating rollout of {} against {}", featureKeys,
+                snapshotVersion == null ? "supplied features" : "snapshot v" + snapshotVersion);
+        return new RolloutSimulator(compiled, featureKeys, parser.andThen(FeatureFlagService::buildAttributes),
+                Runtime.getRuntime().availableProcessors())
+                .run(records, snapshotVersion);
+    }
+
     /**
      * Get string feature value
      */
     public FeatureValueResponse<String> getStringValue(String featureKey, String defaultValue) {
         log.info("Getting string value for feature: {}", featureKey);
         
-        String value = growthBookClient.getFeatureValue(featureKey, defaultValue);
+        String value = cachedValue(client(), featureKey, "string", defaultValue,
+                client -> client.getFeatureValue(featureKey, defaultValue));
         boolean isDefault = value.equals(defaultValue);
         
         return FeatureValueResponse.<String>builder()
@@ -84,7 +287,8 @@ public class FeatureFlagService {
     public FeatureValueResponse<Boolean> getBooleanValue(String featureKey, Boolean defaultValue) {
         log.info("Getting boolean value for feature: {}", featureKey);
         
-        Boolean value = growthBookClient.getFeatureValueAsBoolean(featureKey, defaultValue);
+        Boolean value = cachedValue(client(), featureKey, "boolean", defaultValue,
+                client -> client.getFeatureValueAsBoolean(featureKey, defaultValue));
         boolean isDefault = value.equals(defaultValue);
         
         return FeatureValueResponse.<Boolean>builder()
@@ -101,7 +305,8 @@ public class FeatureFlagService {
     public FeatureValueResponse<Integer> getIntegerValue(String featureKey, Integer defaultValue) {
         log.info("Getting integer value for feature: {}", featureKey);
         
-        Integer value = growthBookClient.getFeatureValueAsInteger(featureKey, defaultValue);
+        Integer value = cachedValue(client(), featureKey, "integer", defaultValue,
+                client -> client.getFeatureValueAsInteger(featureKey, defaultValue));
         boolean isDefault = value.equals(defaultValue);
         
         return FeatureValueResponse.<Integer>builder()
@@ -118,7 +323,8 @@ public class FeatureFlagService {
     public FeatureValueResponse<Double> getDoubleValue(String featureKey, Double defaultValue) {
         log.info("Getting double value for feature: {}", featureKey);
         
-        Double value = growthBookClient.getFeatureValueAsDouble(featureKey, defaultValue);
+        Double value = cachedValue(client(), featureKey, "double", defaultValue,
+                client -> client.getFeatureValueAsDouble(featureKey, defaultValue));
         boolean isDefault = value.equals(defaultValue);
         
         return FeatureValueResponse.<Double>builder()
@@ -134,10 +340,104 @@ public class FeatureFlagService {
      */
     public void refreshFeatures() {
         log.info("Refreshing features from GrowthBook");
-        growthBookClient.refreshFeatures();
+        String clientKey = TenantContext.currentClientKey();
+        try {
+            if (clientKey != null) {
+                tenantRegistry.refresh(clientKey).join();
+            } else {
+                refreshCoordinator.requestRefresh("manual").join();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof FeatureFlagException featureFlagException) {
+                throw featureFlagException;
+            }
+            throw new FeatureFlagException("Failed to refresh features", e.getCause());
+        }
     }
 
-    private Map<String, Object> buildAttributes(FeatureEvaluationRequest request) {
+    /**
+     * Publish the features carried by a webhook payload; false when it has none
+     */
+    public boolean applyWebhookPayload(byte[] payload) {
+        boolean applied;
+        try {
+            applied = refreshCoordinator.applyWebhookPayload(payload).join();
+        } catch (CompletionException e) {
+            throw new FeatureFlagException("Failed to apply webhook features", e.getCause());
+        }
+        if (applied) {
+            refreshCoordinator.recordWebhook(true);
+        }
+        return applied;
+    }
+
+    /**
+     * Request a refresh without waiting for it; bursts are merged into one fetch
+     */
+    public CompletableFuture<Void> requestRefresh(String source) {
+        return refreshCoordinator.requestRefresh(source);
+    }
+
+    /**
+     * Get the content hash of the snapshot requests are currently evaluated against.
+     * Unlike the version, it is the same on every replica and across restarts for the same features.
+     */
+    public String getSnapshotContentHash() {
+        return client().currentSnapshot().getContentHash();
+    }
+
+    /**
+     * Get the current features, or only the given keys, encoded for client SDK bootstrap
+     */
+    public BootstrapPayloadCache.BootstrapPayload getBootstrapPayload(List<String> featureKeys) {
+        long start = System.nanoTime();
+        GrowthBookClient client = client();
+        BootstrapPayloadCache.BootstrapPayload payload =
+                bootstrapPayloadCache.get(client.currentSnapshot(), featureKeys, client.getCipher());
+        metrics.recordEvaluation("bootstrap", FeatureFlagMetrics.ALL_FEATURES, System.nanoTime() - start);
+        return payload;
+    }
+
+    /**
+     * Refresh outcome counters, including refreshes skipped because nothing changed
+     */
+    public RefreshStatsResponse getRefreshStats() {
+        if (TenantContext.currentClientKey() != null) {
+            return client().getRefreshStats().toResponse();
+        }
+        RefreshStatsResponse stats = growthBookClient.getRefreshStats().toResponse();
+        stats.setTriggers(refreshCoordinator.getTriggerCount());
+        stats.setMergedTriggers(refreshCoordinator.getMergedCount());
+        stats.setExecuted(refreshCoordinator.getExecutedCount());
+        return stats;
+    }
+
+    /**
+     * Evaluation cache hit/miss/eviction counters
+     */
+    public EvaluationCacheStatsResponse getEvaluationCacheStats() {
+        return evaluationCache.getStats();
+    }
+
+    private <T> T cachedValue(GrowthBookClient client, String featureKey, String type, T defaultValue,
+                              Function<GrowthBookClient, T> loader) {
+        EvaluationCache.Key key = new EvaluationCache.Key(featureKey, Arrays.asList(type, defaultValue), Map.of(),
+                client.currentSnapshot().getVersion());
+        long start = System.nanoTime();
+        T value = evaluationCache.get(key, () -> loader.apply(client));
+        metrics.recordEvaluation("value", featureKey, System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * Client for the client key selected by the current request; the default one unless a tenant was chosen
+     */
+    private GrowthBookClient client() {
+        String clientKey = TenantContext.currentClientKey();
+        return clientKey == null ? growthBookClient : tenantRegistry.clientFor(clientKey);
+    }
+
+    private static Map<String, Object> buildAttributes(FeatureEvaluationRequest request) {
         Map<String, Object> attributes = new HashMap<>();
         
         if (request.getUserId() != null) {
@@ -158,23 +458,4 @@ public class FeatureFlagService {
         
         return attributes;
     }
-
-    private Object parseJsonElement(com.google.gson.JsonElement element) {
-        if (element.isJsonPrimitive()) {
-            var primitive = element.getAsJsonPrimitive();
-            if (primitive.isBoolean()) {
-                return primitive.getAsBoolean();
-            } else if (primitive.isNumber()) {
-                return primitive.getAsNumber();
-            } else {
-                return primitive.getAsString();
-            }
-        } else if (element.isJsonObject()) {
-            return element.getAsJsonObject().toString();
-        } else if (element.isJsonArray()) {
-            return element.getAsJsonArray().toString();
-        }
-        return null;
-    }
 }
-
@@ -0,0 +1,167 @@
+package dev.scastillo.feature_flags.service;
+
+import dev.scastillo.feature_flags.dto.response.FeatureSimulation;
+import dev.scastillo.feature_flags.dto.response.SimulationOutcome;
+import dev.scastillo.feature_flags.dto.response.SimulationResponse;
+import dev.scastillo.feature_flags.engine.CompiledFeatures;
+import dev.scastillo.feature_flags.engine.EvaluationResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Evaluates features for a stream of user records and counts the outcomes, for rollout simulations.
+ * Records are read on the calling thread in batches and evaluated on one worker per core; at most
+ * two batches per worker are in flight, so memory stays flat however many rows the input has.
+ * Compiled results are shared per outcome (one instance per default value, force rule and variation),
+ * so each outcome is counted by identity of its result and nothing is retained per user.
+ */
+@Slf4j
+final class RolloutSimulator {
+
+    private static final int BATCH_SIZE = 1_024;
+
+    private final CompiledFeatures features;
+    private final List<String> featureKeys;
+    private final Function<String, Map<String, Object>> toAttributes;
+    private final int parallelism;
+
+    private final List<Map<EvaluationResult, LongAdder>> counts;
+    private final AtomicLong users = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicReference<String> firstError = new AtomicReference<>();
+
+    RolloutSimulator(CompiledFeatures features, List<String> featureKeys,
+                     Function<String, Map<String, Object>> toAttributes, int parallelism) {
+        this.features = features;
+        this.featureKeys = featureKeys;
+        this.toAttributes = toAttributes;
+        this.parallelism = Math.max(1, parallelism);
+        this.counts = new ArrayList<>(featureKeys.size());
+        for (int i = 0; i < featureKeys.size(); i++) {
+            counts.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    SimulationResponse run(Iterator<String> records, Long snapshotVersion) {
+        long start = System.nanoTime();
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        // CPU-bound work: one platform thread per core
+        try (ExecutorService workers = Executors.newFixedThreadPool(parallelism)) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while (records.hasNext()) {
+                batch.add(records.next());
+                if (batch.size() == BATCH_SIZE) {
+                    submit(workers, inFlight, batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(workers, inFlight, batch);
+            }
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("Rollout simulation finished: {} users, {} features in {}ms ({} users/s)",
+                users.get(), featureKeys.size(), elapsedMs, users.get() * 1000 / elapsedMs);
+
+        List<FeatureSimulation> results = new ArrayList<>(featureKeys.size());
+        for (int i = 0; i < featureKeys.size(); i++) {
+            results.add(summarize(featureKeys.get(i), counts.get(i)));
+        }
+        return SimulationResponse.builder()
+                .snapshotVersion(snapshotVersion)
+                .users(users.get())
+                .failed(failed.get())
+                .firstError(firstError.get())
+                .elapsedMs(elapsedMs)
+                .features(results)
+                .build();
+    }
+
+    private void submit(ExecutorService workers, Semaphore inFlight, List<String> batch) {
+        inFlight.acquireUninterruptibly();
+        workers.execute(() -> {
+            try {
+                evaluate(batch);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void evaluate(List<String> batch) {
+        // Counted locally first: a handful of distinct outcomes per feature, merged once per batch
+        List<Map<EvaluationResult, long[]>> local = new ArrayList<>(featureKeys.size());
+        for (int i = 0; i < featureKeys.size(); i++) {
+            local.add(new IdentityHashMap<>());
+        }
+        EvaluationResult[] results = new EvaluationResult[featureKeys.size()];
+        long evaluated = 0;
+        for (String record : batch) {
+            try {
+                Map<String, Object> attributes = toAttributes.apply(record);
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = features.evaluate(featureKeys.get(i), attributes);
+                }
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                firstError.compareAndSet(null, e.getMessage());
+                continue;
+            }
+            for (int i = 0; i < results.length; i++) {
+                local.get(i).computeIfAbsent(results[i], r -> new long[1])[0]++;
+            }
+            evaluated++;
+        }
+        for (int i = 0; i < featureKeys.size(); i++) {
+            Map<EvaluationResult, LongAdder> total = counts.get(i);
+            local.get(i).forEach((result, count) -> total.computeIfAbsent(result, r -> new LongAdder()).add(count[0]));
+        }
+        users.addAndGet(evaluated);
+    }
+
+    private static FeatureSimulation summarize(String featureKey, Map<EvaluationResult, LongAdder> counts) {
+        long total = counts.values().stream().mapToLong(LongAdder::sum).sum();
+        long on = 0;
+        List<SimulationOutcome> outcomes = new ArrayList<>(counts.size());
+        for (Map.Entry<EvaluationResult, LongAdder> entry : counts.entrySet()) {
+            EvaluationResult result = entry.getKey();
+            long users = entry.getValue().sum();
+            if (result.isOn()) {
+                on += users;
+            }
+            outcomes.add(SimulationOutcome.builder()
+                    .source(result.getSource().getValue())
+                    .ruleId(result.getRuleId())
+                    .experimentKey(result.getExperimentKey())
+                    .variationId(result.getVariationId() >= 0 ? result.getVariationId() : null)
+                    .value(result.getValue())
+                    .on(result.isOn())
+                    .users(users)
+                    .percent(total == 0 ? 0 : Math.round(users * 10_000.0 / total) / 100.0)
+                    .build());
+        }
+        outcomes.sort(Comparator.comparingLong(SimulationOutcome::getUsers).reversed());
+        return FeatureSimulation.builder()
+                .featureKey(featureKey)
+                .users(total)
+                .on(on)
+                .off(total - on)
+                .outcomes(outcomes)
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * AES-CBC codec for GrowthBook encrypted features ("encryptedFeatures": "base64(iv).base64(ciphertext)").
+ * The key and the Cipher instances are set up once and reused; payloads are only decrypted
+ * when a refresh or webhook loads them, never on the evaluation path. Cipher objects are not
+ * thread-safe, so each direction is guarded by its own lock.
+ */
+public final class FeatureCipher {
+
+    private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final int IV_BYTES = 16;
+
+    private final SecretKeySpec key;
+    private final Cipher decryptor;
+    private final Cipher encryptor;
+    private final SecureRandom random = new SecureRandom();
+
+    private FeatureCipher(byte[] key) throws GeneralSecurityException {
+        this.key = new SecretKeySpec(key, "AES");
+        this.decryptor = Cipher.getInstance(TRANSFORMATION);
+        this.encryptor = Cipher.getInstance(TRANSFORMATION);
+    }
+
+    /**
+     * Cipher for the base64 decryption key of an SDK connection, or null when no key is configured
+     */
+    public static FeatureCipher forKey(String base64Key) {
+        if (base64Key == null || base64Key.isBlank()) {
+            return null;
+        }
+        try {
+            byte[] key = Base64.getDecoder().decode(base64Key.trim());
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new FeatureFlagException("Decryption key must be a base64 AES key of 128, 192 or 256 bits");
+            }
+            return new FeatureCipher(key);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            throw new FeatureFlagException("Invalid features decryption key", e);
+        }
+    }
+
+    public String decrypt(String encrypted) {
+        int dot = encrypted.indexOf('.');
+        if (dot < 0) {
+            throw new FeatureFlagException("Encrypted features are not in the iv.ciphertext format");
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] iv = base64.decode(encrypted.substring(0, dot));
+            byte[] ciphertext = base64.decode(encrypted.substring(dot + 1));
+            byte[] plaintext;
+            synchronized (decryptor) {
+                decryptor.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+                plaintext = decryptor.doFinal(ciphertext);
+            }
+            return new String(plaintext, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            throw new FeatureFlagException("Could not decrypt features; check the decryption key", e);
+        }
+    }
+
+    /**
+     * Encrypts with a fresh random IV, in the same format GrowthBook client SDKs decrypt
+     */
+    public String encrypt(String plaintext) {
+        byte[] iv = new byte[IV_BYTES];
+        try {
+            byte[] ciphertext;
+            synchronized (encryptor) {
+                random.nextBytes(iv);
+                encryptor.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+                ciphertext = encryptor.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+            }
+            Base64.Encoder base64 = Base64.getEncoder();
+            return base64.encodeToString(iv) + "." + base64.encodeToString(ciphertext);
+        } catch (GeneralSecurityException e) {
+            throw new FeatureFlagException("Could not encrypt features", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import com.google.gson.JsonObject;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Features object read from a GrowthBook payload, kept both as a tree (for key
+ * extraction and compilation) and as JSON text (for the SDK and persistence).
+ */
+@Value
+public class FeaturePayload {
+
+    @ToString.Exclude
+    JsonObject features;
+    @ToString.Exclude
+    String featuresJson;
+    /**
+     * SHA-256 (hex) of the raw payload bytes
+     */
+    String payloadHash;
+    /**
+     * Size of the raw payload; 0 for features built from text rather than downloaded
+     */
+    long payloadBytes;
+    /**
+     * Whether the payload had a top-level "features" key; otherwise the whole object was taken as the features
+     */
+    boolean wrapped;
+    /**
+     * The payload's "dateUpdated", when present and parseable; orders payloads that arrive by different paths
+     */
+    Instant dateUpdated;
+}
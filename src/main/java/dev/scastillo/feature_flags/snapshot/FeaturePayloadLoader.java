@@ -0,0 +1,275 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Reads a GrowthBook features payload ({"status": 200, "features": {...}, ...}) straight from
+ * its byte stream. The payload is hashed while it is parsed, and the "features" value is copied
+ * to its text as its tree is built, so a refresh makes one pass over the bytes whatever their
+ * size and never serializes the tree back. The tree itself is still needed: the snapshot's keys,
+ * experiment detection and the compiled engine read it.
+ * Payloads of SDK connections with encryption ({"encryptedFeatures": "..."}) are decrypted
+ * here, once per load, so snapshots and evaluation only ever see plain features.
+ * Saved groups sent by reference ({"savedGroups": {...}} with $inGroup / $notInGroup conditions)
+ * are inlined as $in / $nin lists, as GrowthBook does for connections without references, so
+ * both engines and everything that stores the features text see self-contained conditions.
+ */
+public final class FeaturePayloadLoader {
+
+    private static final String FEATURES = "features";
+    private static final String ENCRYPTED_FEATURES = "encryptedFeatures";
+    private static final String SAVED_GROUPS = "savedGroups";
+    private static final String ENCRYPTED_SAVED_GROUPS = "encryptedSavedGroups";
+    private static final String DATE_UPDATED = "dateUpdated";
+
+    private FeaturePayloadLoader() {
+    }
+
+    /**
+     * Loads the payload and closes the stream. Malformed JSON is reported as an exception
+     * rather than an empty features object, so callers keep their current features.
+     */
+    public static FeaturePayload load(InputStream body) throws IOException {
+        return load(body, null);
+    }
+
+    /**
+     * Loads the payload, decrypting "encryptedFeatures" with the given cipher.
+     * An encrypted payload without a cipher is an error, not an empty features object.
+     */
+    public static FeaturePayload load(InputStream body, FeatureCipher cipher) throws IOException {
+        MessageDigest digest = sha256();
+        CountingInputStream counted = new CountingInputStream(body);
+        try (DigestInputStream in = new DigestInputStream(counted, digest);
+             JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonParseException("Features payload is not a JSON object");
+            }
+
+            JsonObject root = new JsonObject();
+            JsonObject features = null;
+            String featuresJson = null;
+            String encrypted = null;
+            JsonObject savedGroups = null;
+            String encryptedSavedGroups = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (features == null && FEATURES.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    StringWriter text = new StringWriter();
+                    try (JsonWriter writer = new JsonWriter(text)) {
+                        features = copy(reader, writer).getAsJsonObject();
+                    } catch (MalformedJsonException | EOFException e) {
+                        // Reported as JsonParser.parseReader would
+                        throw new JsonSyntaxException(e);
+                    }
+                    featuresJson = text.toString();
+                    continue;
+                }
+                JsonElement value = JsonParser.parseReader(reader);
+                if (ENCRYPTED_FEATURES.equals(name) && value.isJsonPrimitive()) {
+                    encrypted = value.getAsString();
+                } else if (ENCRYPTED_FEATURES.equals(name) && value.isJsonPrimitive()) {
+                    encrypted = value.getAsString();
+                } else if (SAVED_GROUPS.equals(name) && value.isJsonObject()) {
+                    savedGroups = value.getAsJsonObject();
+                } else if (ENCRYPTED_SAVED_GROUPS.equals(name) && value.isJsonPrimitive()) {
+                    encryptedSavedGroups = value.getAsString();
+                } else {
+                    root.add(name, value);
+                }
+            }
+            reader.endObject();
+            // The reader buffers ahead; drain the rest so the hash covers every byte
+            in.transferTo(OutputStream.nullOutputStream());
+
+            if (encrypted != null && (features == null || features.isEmpty())) {
+                if (cipher == null) {
+                    throw new JsonParseException("Features payload is encrypted but no decryption key is configured");
+                }
+                JsonElement decrypted = JsonParser.parseString(cipher.decrypt(encrypted));
+                if (!decrypted.isJsonObject()) {
+                    throw new JsonParseException("Decrypted features are not a JSON object");
+                }
+                features = decrypted.getAsJsonObject();
+                featuresJson = null;
+            }
+            if (encryptedSavedGroups != null && (savedGroups == null || savedGroups.isEmpty()) && cipher != null) {
+                JsonElement decrypted = JsonParser.parseString(cipher.decrypt(encryptedSavedGroups));
+                savedGroups = decrypted.isJsonObject() ? decrypted.getAsJsonObject() : null;
+            }
+            if (features != null && savedGroups != null) {
+                inlineSavedGroups(features, savedGroups);
+                featuresJson = null;
+            }
+
+            boolean wrapped = features != null;
+            JsonObject result = wrapped ? features : root;
+            String json = wrapped && featuresJson != null ? featuresJson : result.toString();
+            return new FeaturePayload(result, json, HexFormat.of().formatHex(digest.digest()),
+                    counted.count, wrapped, wrapped ? dateUpdated(root.get(DATE_UPDATED)) : null);
+        }
+    }
+
+    /**
+     * Reads one value and writes it to {@code writer} token by token, building its tree on the way.
+     * The text is what {@link JsonElement#toString()} would give for the tree, without serializing it again.
+     */
+    private static JsonElement copy(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                JsonObject object = new JsonObject();
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    writer.name(name);
+                    object.add(name, copy(reader, writer));
+                }
+                reader.endObject();
+                writer.endObject();
+                return object;
+            }
+            case BEGIN_ARRAY -> {
+                JsonArray array = new JsonArray();
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    array.add(copy(reader, writer));
+                }
+                reader.endArray();
+                writer.endArray();
+                return array;
+            }
+            case STRING -> {
+                String value = reader.nextString();
+                writer.value(value);
+                return new JsonPrimitive(value);
+            }
+            case NUMBER -> {
+                LazilyParsedNumber value = new LazilyParsedNumber(reader.nextString());
+                writer.value(value);
+                return new JsonPrimitive(value);
+            }
+            case BOOLEAN -> {
+                boolean value = reader.nextBoolean();
+                writer.value(value);
+                return new JsonPrimitive(value);
+            }
+            case NULL -> {
+                reader.nextNull();
+                writer.nullValue();
+                return JsonNull.INSTANCE;
+            }
+            default -> throw new JsonParseException("Unexpected " + reader.peek() + " in features payload");
+        }
+    }
+
+    private static Instant dateUpdated(JsonElement value) {
+        if (value == null || !value.isJsonPrimitive()) {
+            return null;
+        }
+        try {
+            return Instant.parse(value.getAsString());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces {"$inGroup": id} with {"$in": [members]} and $notInGroup with $nin inside every rule
+     * condition. An unknown group is an empty list, as GrowthBook's {@code savedGroups[id] || []}.
+     */
+    static void inlineSavedGroups(JsonElement element, JsonObject savedGroups) {
+        inlineSavedGroups(element, savedGroups, false);
+    }
+
+    private static void inlineSavedGroups(JsonElement element, JsonObject savedGroups, boolean inCondition) {
+        if (element.isJsonArray()) {
+            element.getAsJsonArray().forEach(item -> inlineSavedGroups(item, savedGroups, inCondition));
+            return;
+        }
+        if (!element.isJsonObject()) {
+            return;
+        }
+        JsonObject object = element.getAsJsonObject();
+        if (inCondition) {
+            inlineGroup(object, "$inGroup", "$in", savedGroups);
+            inlineGroup(object, "$notInGroup", "$nin", savedGroups);
+        }
+        object.entrySet().forEach(entry ->
+                inlineSavedGroups(entry.getValue(), savedGroups, inCondition || "condition".equals(entry.getKey())));
+    }
+
+    private static void inlineGroup(JsonObject condition, String reference, String operator, JsonObject savedGroups) {
+        JsonElement id = condition.get(reference);
+        if (id == null || !id.isJsonPrimitive()) {
+            return;
+        }
+        JsonElement members = savedGroups.get(id.getAsString());
+        condition.remove(reference);
+        condition.add(operator, members != null && members.isJsonArray() ? members : new JsonArray());
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
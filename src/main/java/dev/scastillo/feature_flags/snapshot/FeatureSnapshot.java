@@ -0,0 +1,152 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.engine.CompiledFeatures;
+import growthbook.sdk.java.GBContext;
+import growthbook.sdk.java.GrowthBook;
+import lombok.ToString;
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, versioned view of the features payload last fetched from GrowthBook.
+ * Each snapshot owns the {@link GrowthBook} instance built from its payload (and, with the
+ * compiled engine, its {@link CompiledFeatures}), so a refresh never mutates what request
+ * threads are evaluating against.
+ * The HTTP validators (ETag / Last-Modified) and the payload hash let the
+ * next refresh skip the download or the re-parse when nothing changed.
+ * The version only orders snapshots within this process; the content hash identifies the
+ * features themselves, across restarts and replicas.
+ */
+@Value
+public class FeatureSnapshot {
+
+    long version;
+    @ToString.Exclude
+    String featuresJson;
+    Set<String> featureKeys;
+    /**
+     * Features with an experiment rule: evaluating them for a user may record an exposure
+     */
+    Set<String> experimentFeatureKeys;
+    @ToString.Exclude
+    GrowthBook growthBook;
+    /**
+     * Present only when the compiled engine is selected
+     */
+    @ToString.Exclude
+    CompiledFeatures compiledFeatures;
+    String etag;
+    String lastModified;
+    String payloadHash;
+    /**
+     * SHA-256 (hex, first 128 bits) of the features JSON
+     */
+    String contentHash;
+    Instant fetchedAt;
+    /**
+     * dateUpdated of the payload the features came from; null for restored or shared snapshots
+     */
+    Instant dateUpdated;
+
+    /**
+     * Builds from features text (a restored, shared or pushed snapshot): parsed once into a tree
+     * and built like a downloaded payload. Text that is not a JSON object has no features.
+     */
+    static FeatureSnapshot build(String featuresJson, boolean enabled, boolean compile,
+                                 String etag, String lastModified, String payloadHash) {
+        FeaturePayload payload = new FeaturePayload(parseFeatures(featuresJson), featuresJson, payloadHash, 0, true, null);
+        return build(payload, enabled, compile, etag, lastModified);
+    }
+
+    /**
+     * Builds from an already parsed payload: keys and compiled features come from its tree, only the SDK reads the text.
+     * The snapshot gets its version when it is published ({@link #withVersion}).
+     */
+    static FeatureSnapshot build(FeaturePayload payload, boolean enabled, boolean compile,
+                                 String etag, String lastModified) {
+        String featuresJson = payload.getFeaturesJson();
+        GrowthBook growthBook = new GrowthBook(GBContext.builder()
+                .featuresJson(featuresJson)
+                .enabled(enabled)
+                .build());
+        CompiledFeatures compiledFeatures = compile ? CompiledFeatures.compile(payload.getFeatures(), enabled) : null;
+        Set<String> featureKeys = Collections.unmodifiableSet(new LinkedHashSet<>(payload.getFeatures().keySet()));
+        return new FeatureSnapshot(0, featuresJson, featureKeys, experimentFeatureKeys(payload.getFeatures()),
+                growthBook, compiledFeatures, etag, lastModified, payload.getPayloadHash(), contentHash(featuresJson),
+                Instant.now(), payload.getDateUpdated());
+    }
+
+    FeatureSnapshot withVersion(long version) {
+        return new FeatureSnapshot(version, featuresJson, featureKeys, experimentFeatureKeys, growthBook,
+                compiledFeatures, etag, lastModified, payloadHash, contentHash, fetchedAt, dateUpdated);
+    }
+
+    /**
+     * Same features and version, new HTTP validators. Used when the upstream payload is unchanged.
+     */
+    FeatureSnapshot withValidators(String etag, String lastModified, String payloadHash) {
+        return new FeatureSnapshot(version, featuresJson, featureKeys, experimentFeatureKeys, growthBook,
+                compiledFeatures, etag, lastModified, payloadHash, contentHash, Instant.now(), dateUpdated);
+    }
+
+    /**
+     * Whether the payload was last updated before this snapshot's; unknown dates are never older
+     */
+    public boolean isNewerThan(FeaturePayload payload) {
+        return dateUpdated != null && payload.getDateUpdated() != null && payload.getDateUpdated().isBefore(dateUpdated);
+    }
+
+    public boolean hasExperiment(String featureKey) {
+        return experimentFeatureKeys.contains(featureKey);
+    }
+
+    /**
+     * Keys of features with a rule that runs an experiment (variations and no force), as GrowthBook decides
+     */
+    private static Set<String> experimentFeatureKeys(JsonObject features) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (Map.Entry<String, JsonElement> feature : features.entrySet()) {
+            if (feature.getValue() instanceof JsonObject definition && definition.get("rules") instanceof JsonArray rules) {
+                for (JsonElement rule : rules) {
+                    if (rule instanceof JsonObject experiment && !experiment.has("force") && experiment.has("variations")) {
+                        keys.add(feature.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+        return keys.isEmpty() ? Set.of() : Collections.unmodifiableSet(keys);
+    }
+
+    private static String contentHash(String featuresJson) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(featuresJson.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static JsonObject parseFeatures(String featuresJson) {
+        try {
+            JsonElement features = JsonParser.parseString(featuresJson);
+            return features.isJsonObject() ? features.getAsJsonObject() : new JsonObject();
+        } catch (JsonParseException e) {
+            return new JsonObject();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link FeatureSnapshot}.
+ * Refreshes build a complete new snapshot off the request path and publish it
+ * with a single reference swap; evaluations only read it and never block.
+ * Versions increase monotonically and are unique across holders (one per tenant), so caches
+ * keyed by version never mix tenants. A version is taken when the snapshot is published, not
+ * when its build starts, so builds finishing out of order still publish in version order.
+ * Registered {@link FeatureSnapshotListener}s are told about every published snapshot.
+ */
+@Slf4j
+public class FeatureSnapshotHolder {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final boolean enabled;
+    private final boolean compiled;
+    private final AtomicReference<FeatureSnapshot> current;
+    private final List<FeatureSnapshotListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean retired;
+
+    public FeatureSnapshotHolder(String initialFeaturesJson, GrowthBookProperties properties) {
+        this(new PersistedFeatures(initialFeaturesJson, null, null, null, null), properties);
+    }
+
+    public FeatureSnapshotHolder(PersistedFeatures initial, GrowthBookProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.compiled = properties.getEngine() == GrowthBookProperties.Engine.COMPILED;
+        this.current = new AtomicReference<>(FeatureSnapshot.build(initial.getFeaturesJson(), enabled, compiled,
+                initial.getEtag(), initial.getLastModified(), initial.getPayloadHash())
+                .withVersion(VERSIONS.incrementAndGet()));
+    }
+
+    public FeatureSnapshot current() {
+        return current.get();
+    }
+
+    public FeatureSnapshot update(String featuresJson) {
+        return update(featuresJson, null, null, null);
+    }
+
+    public FeatureSnapshot update(String featuresJson, String etag, String lastModified, String payloadHash) {
+        return publish(FeatureSnapshot.build(featuresJson, enabled, compiled, etag, lastModified, payloadHash));
+    }
+
+    public FeatureSnapshot update(FeaturePayload payload, String etag, String lastModified) {
+        return publish(FeatureSnapshot.build(payload, enabled, compiled, etag, lastModified));
+    }
+
+    private FeatureSnapshot publish(FeatureSnapshot built) {
+        if (retired) {
+            log.debug("Feature snapshot not published: holder retired");
+            return current.get();
+        }
+        FeatureSnapshot previous;
+        FeatureSnapshot next;
+        do {
+            previous = current.get();
+            // Taken after reading previous, so always above its version
+            next = built.withVersion(VERSIONS.incrementAndGet());
+        } while (!current.compareAndSet(previous, next));
+
+        log.debug("Feature snapshot v{} published ({} features)", next.getVersion(), next.getFeatureKeys().size());
+        notifyListeners(previous, next);
+        return next;
+    }
+
+    /**
+     * Keep the current features and version, only record new HTTP validators.
+     */
+    public FeatureSnapshot updateValidators(String etag, String lastModified, String payloadHash) {
+        return current.updateAndGet(snapshot -> snapshot.withValidators(etag, lastModified, payloadHash));
+    }
+
+    /**
+     * Stop publishing: a refresh still in flight for a dropped tenant keeps the last snapshot
+     * and tells no listener. Evaluations already holding this holder go on reading it.
+     */
+    public void retire() {
+        retired = true;
+    }
+
+    public void addListener(FeatureSnapshotListener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(FeatureSnapshot previous, FeatureSnapshot next) {
+        for (FeatureSnapshotListener listener : listeners) {
+            try {
+                listener.onSnapshotPublished(previous, next);
+            } catch (Exception e) {
+                log.warn("Feature snapshot listener failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package dev.scastillo.feature_flags.snapshot;
+
+/**
+ * Notified after a new feature snapshot has been published.
+ * Called on the refreshing thread, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface FeatureSnapshotListener {
+
+    void onSnapshotPublished(FeatureSnapshot previous, FeatureSnapshot current);
+}
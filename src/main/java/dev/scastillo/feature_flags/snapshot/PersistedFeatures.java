@@ -0,0 +1,21 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Features payload read back from the local snapshot file, with the HTTP
+ * validators it was fetched with so the first refresh can still be conditional.
+ */
+@Value
+public class PersistedFeatures {
+
+    @ToString.Exclude
+    String featuresJson;
+    String etag;
+    String lastModified;
+    String payloadHash;
+    Instant savedAt;
+}
@@ -0,0 +1,60 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Creates the directories and files snapshots are stored in so only their owner can read them
+ * (0700 / 0600): without a decryption key they hold the features in clear. Replicas sharing a
+ * snapshot must therefore run as the same user. Without POSIX permissions (Windows) the platform
+ * defaults apply.
+ * Directories that already exist are left as they are: they may be shared, like /dev/shm.
+ */
+final class PrivateFiles {
+
+    private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static final Set<PosixFilePermission> DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> FILE = PosixFilePermissions.fromString("rw-------");
+
+    private PrivateFiles() {
+    }
+
+    static void createDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        Files.createDirectories(directory);
+        if (POSIX) {
+            // Creation attributes are masked by the umask; set the mode explicitly
+            Files.setPosixFilePermissions(directory, DIRECTORY);
+        }
+    }
+
+    static Path createTempFile(Path directory, String prefix, String suffix) throws IOException {
+        return POSIX
+                ? Files.createTempFile(directory, prefix, suffix, PosixFilePermissions.asFileAttribute(FILE))
+                : Files.createTempFile(directory, prefix, suffix);
+    }
+
+    /**
+     * Opens a file, creating it owner-only; one left by an earlier version with a wider mode is narrowed
+     */
+    static FileChannel open(Path file, OpenOption... options) throws IOException {
+        FileAttribute<?>[] attributes = POSIX
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(FILE)}
+                : new FileAttribute<?>[0];
+        FileChannel channel = FileChannel.open(file, Set.of(options), attributes);
+        if (POSIX && !Files.getPosixFilePermissions(file).equals(FILE)) {
+            Files.setPosixFilePermissions(file, FILE);
+        }
+        return channel;
+    }
+}
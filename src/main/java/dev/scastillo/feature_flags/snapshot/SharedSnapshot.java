@@ -0,0 +1,209 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in sharing of the features snapshot between the replicas running on one host
+ * (growthbook.shared-snapshot.enabled). The process holding the lock file is the leader:
+ * it fetches from GrowthBook as usual and writes every published snapshot to a memory-mapped
+ * {@link SharedSnapshotFile}. The others are followers: they never call the API, they poll the
+ * file's sequence and publish new versions locally. The OS releases the lock when the leader dies,
+ * and the first follower to take it over becomes the new leader.
+ * With a decryption key configured the shared features are encrypted with it.
+ */
+@Slf4j
+@Component
+public class SharedSnapshot {
+
+    private final boolean enabled;
+    private final FeatureSnapshotHolder snapshotHolder;
+    private final Path file;
+    private final Path lockFile;
+    private final int initialCapacityBytes;
+    private final FeatureCipher cipher;
+    private final ScheduledExecutorService poller;
+
+    // guarded by this
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private SharedSnapshotFile shared;
+    private volatile boolean leader;
+
+    public SharedSnapshot(GrowthBookProperties properties, FeatureSnapshotHolder snapshotHolder) {
+        GrowthBookProperties.SharedSnapshot config = properties.getSharedSnapshot();
+        this.enabled = config.isEnabled();
+        this.snapshotHolder = snapshotHolder;
+        this.file = file(properties);
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        this.initialCapacityBytes = config.getInitialCapacityBytes();
+        this.cipher = FeatureCipher.forKey(properties.getDecryptionKey());
+        if (!enabled) {
+            this.poller = null;
+            return;
+        }
+
+        snapshotHolder.addListener((previous, current) -> {
+            if (leader) {
+                publish(current);
+            }
+        });
+        this.poller = Executors.newSingleThreadScheduledExecutor(properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("growthbook-shared-snapshot").factory()
+                : Thread.ofPlatform().daemon().name("growthbook-shared-snapshot").factory());
+        poll();
+        poller.scheduleWithFixedDelay(this::poll, config.getPollIntervalMs(), config.getPollIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shared snapshot file for the configured client key
+     */
+    public static Path file(GrowthBookProperties properties) {
+        return Path.of(properties.getSharedSnapshot().getDirectory()).resolve(properties.getClientKey() + ".shm");
+    }
+
+    /**
+     * Features currently published in the shared file by a live or previous leader, if any.
+     * Lets a replica start without fetching.
+     */
+    public static Optional<PersistedFeatures> readPublished(GrowthBookProperties properties) {
+        if (!properties.getSharedSnapshot().isEnabled()) {
+            return Optional.empty();
+        }
+        Path path = file(properties);
+        try {
+            Optional<SharedSnapshotFile> reader = SharedSnapshotFile.openReader(path,
+                    FeatureCipher.forKey(properties.getDecryptionKey()));
+            if (reader.isEmpty()) {
+                return Optional.empty();
+            }
+            try (SharedSnapshotFile shared = reader.get()) {
+                return shared.readIfChanged();
+            }
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable shared snapshot {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    /**
+     * Followers get their features from the leader instead of GrowthBook
+     */
+    public boolean isFollower() {
+        return enabled && !leader;
+    }
+
+    /**
+     * Publishes the leader's latest snapshot locally if there is a new one; false when nothing changed
+     */
+    public synchronized boolean sync() {
+        if (!isFollower()) {
+            return false;
+        }
+        try {
+            if (shared == null) {
+                shared = SharedSnapshotFile.openReader(file, cipher).orElse(null);
+                if (shared == null) {
+                    return false;
+                }
+            }
+            Optional<PersistedFeatures> published = shared.readIfChanged();
+            if (published.isEmpty()) {
+                return false;
+            }
+            PersistedFeatures features = published.get();
+            if (features.getFeaturesJson().equals(snapshotHolder.current().getFeaturesJson())) {
+                snapshotHolder.updateValidators(features.getEtag(), features.getLastModified(), features.getPayloadHash());
+                return false;
+            }
+            FeatureSnapshot current = snapshotHolder.update(features.getFeaturesJson(), features.getEtag(),
+                    features.getLastModified(), features.getPayloadHash());
+            log.info("Picked up shared feature snapshot (sequence {}) as v{}", shared.getLastSequence(), current.getVersion());
+            return true;
+        } catch (IOException e) {
+            log.warn("Could not read shared snapshot {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private void poll() {
+        try {
+            if (!leader) {
+                tryTakeLead();
+            }
+            if (!leader) {
+                sync();
+            }
+        } catch (Exception e) {
+            log.warn("Shared snapshot poll failed: {}", e.getMessage());
+        }
+    }
+
+    private synchronized void tryTakeLead() throws IOException {
+        if (lockChannel == null) {
+            PrivateFiles.createDirectories(lockFile.toAbsolutePath().getParent());
+            lockChannel = PrivateFiles.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            return;
+        }
+        if (shared != null) {
+            shared.close();
+        }
+        shared = SharedSnapshotFile.openWriter(file, initialCapacityBytes, cipher);
+        leader = true;
+        log.info("Leading shared feature snapshot {} (pid {})", file, ProcessHandle.current().pid());
+        publish(snapshotHolder.current());
+    }
+
+    private synchronized void publish(FeatureSnapshot snapshot) {
+        try {
+            shared.write(snapshot);
+            log.debug("Shared feature snapshot v{} (sequence {})", snapshot.getVersion(), shared.getLastSequence());
+        } catch (IOException e) {
+            log.warn("Could not write shared snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() throws IOException {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        leader = false;
+        if (shared != null) {
+            shared.close();
+        }
+        if (lockChannel != null) {
+            // Closing the channel releases the lock for a follower to take over
+            lockChannel.close();
+        }
+    }
+}
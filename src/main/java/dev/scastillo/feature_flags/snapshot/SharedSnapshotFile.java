@@ -0,0 +1,265 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * Memory-mapped features snapshot shared by the JVMs of one host: one writer, any number of readers.
+ *
+ * Layout (native byte order, the file never leaves the host): a 64-byte header with magic, layout version,
+ * sequence, writer pid, publishedAt millis, body length and body CRC32C, then the body: etag, lastModified,
+ * payloadHash (length-prefixed UTF-8, -1 for null) and the features JSON.
+ *
+ * The sequence is a seqlock: the writer makes it odd before touching the body and even again once done,
+ * so a reader that sees the same even sequence before and after copying the body has a consistent copy.
+ * The file only ever grows, so a reader's mapping never points past its end.
+ * It is created owner-only ({@link PrivateFiles}), so every replica must run as the same user.
+ * Opened with a {@link FeatureCipher} (a decryption key is configured), the features JSON is stored
+ * encrypted with it, so the file never holds what GrowthBook only serves encrypted.
+ */
+public final class SharedSnapshotFile implements Closeable {
+
+    private static final int MAGIC = 0x47424d31; // "GBM1"
+    private static final int LAYOUT_VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int LAYOUT_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int PID_OFFSET = 16;
+    private static final int PUBLISHED_AT_OFFSET = 24;
+    private static final int LENGTH_OFFSET = 32;
+    private static final int CRC_OFFSET = 36;
+    static final int HEADER_BYTES = 64;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path file;
+    private final boolean writable;
+    private final FileChannel channel;
+    private final FeatureCipher cipher;
+    private MappedByteBuffer buffer;
+    private long lastSequence;
+
+    private SharedSnapshotFile(Path file, boolean writable, FileChannel channel, FeatureCipher cipher) {
+        this.file = file;
+        this.writable = writable;
+        this.channel = channel;
+        this.cipher = cipher;
+    }
+
+    public static SharedSnapshotFile openWriter(Path file, int initialCapacity) throws IOException {
+        return openWriter(file, initialCapacity, null);
+    }
+
+    /**
+     * Opens the file for writing, creating or re-initializing it when it has no valid header.
+     * With a cipher the features are written encrypted.
+     */
+    public static SharedSnapshotFile openWriter(Path file, int initialCapacity, FeatureCipher cipher) throws IOException {
+        PrivateFiles.createDirectories(file.toAbsolutePath().getParent());
+        FileChannel channel = PrivateFiles.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SharedSnapshotFile shared = new SharedSnapshotFile(file, true, channel, cipher);
+        try {
+            shared.map(Math.max(channel.size(), HEADER_BYTES + (long) initialCapacity));
+            if (shared.buffer.getInt(MAGIC_OFFSET) != MAGIC || shared.buffer.getInt(LAYOUT_OFFSET) != LAYOUT_VERSION) {
+                shared.buffer.putInt(LENGTH_OFFSET, 0);
+                LONGS.setVolatile(shared.buffer, SEQUENCE_OFFSET, 0L);
+                shared.buffer.putInt(LAYOUT_OFFSET, LAYOUT_VERSION);
+                shared.buffer.putInt(MAGIC_OFFSET, MAGIC);
+            } else if ((shared.sequence() & 1) == 1) {
+                // The previous writer died mid-update: readers ignore the body until the next write
+                LONGS.setRelease(shared.buffer, SEQUENCE_OFFSET, shared.sequence() + 1);
+            }
+            return shared;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static Optional<SharedSnapshotFile> openReader(Path file) throws IOException {
+        return openReader(file, null);
+    }
+
+    /**
+     * Opens an existing file read-only; empty when there is none yet. With a cipher the features are decrypted.
+     */
+    public static Optional<SharedSnapshotFile> openReader(Path file, FeatureCipher cipher) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (channel.size() < HEADER_BYTES) {
+            channel.close();
+            return Optional.empty();
+        }
+        SharedSnapshotFile shared = new SharedSnapshotFile(file, false, channel, cipher);
+        shared.map(channel.size());
+        return Optional.of(shared);
+    }
+
+    /**
+     * Publishes a snapshot: features JSON and HTTP validators, not the compiled form
+     */
+    public synchronized void write(FeatureSnapshot snapshot) throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("Shared snapshot " + file + " is open read-only");
+        }
+        byte[] body = encode(snapshot);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+
+        long sequence = sequence();
+        LONGS.setVolatile(buffer, SEQUENCE_OFFSET, sequence + 1);
+        // Body writes must not become visible before the odd sequence
+        VarHandle.storeStoreFence();
+        if (HEADER_BYTES + (long) body.length > buffer.capacity()) {
+            // Double so a growing payload doesn't remap on every write
+            map(Math.max(2L * buffer.capacity(), HEADER_BYTES + (long) body.length));
+        }
+        buffer.put(HEADER_BYTES, body);
+        buffer.putLong(PID_OFFSET, ProcessHandle.current().pid());
+        buffer.putLong(PUBLISHED_AT_OFFSET, System.currentTimeMillis());
+        buffer.putInt(LENGTH_OFFSET, body.length);
+        buffer.putInt(CRC_OFFSET, (int) crc.getValue());
+        LONGS.setRelease(buffer, SEQUENCE_OFFSET, sequence + 2);
+        lastSequence = sequence + 2;
+    }
+
+    /**
+     * The published snapshot if it changed since the last call and could be read consistently;
+     * empty when it is unchanged, mid-update (try again on the next poll) or never written.
+     */
+    public synchronized Optional<PersistedFeatures> readIfChanged() throws IOException {
+        long before = (long) LONGS.getAcquire(buffer, SEQUENCE_OFFSET);
+        if (before == lastSequence || (before & 1) == 1 || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            return Optional.empty();
+        }
+        int length = buffer.getInt(LENGTH_OFFSET);
+        int expectedCrc = buffer.getInt(CRC_OFFSET);
+        long publishedAt = buffer.getLong(PUBLISHED_AT_OFFSET);
+        if (length <= 0) {
+            return Optional.empty();
+        }
+        if (HEADER_BYTES + (long) length > buffer.capacity()) {
+            map(channel.size());
+            if (HEADER_BYTES + (long) length > buffer.capacity()) {
+                return Optional.empty();
+            }
+        }
+        byte[] body = new byte[length];
+        buffer.get(HEADER_BYTES, body);
+        VarHandle.acquireFence();
+        if ((long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET) != before) {
+            return Optional.empty();
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("checksum mismatch in " + file);
+        }
+        lastSequence = before;
+        return Optional.of(decode(body, Instant.ofEpochMilli(publishedAt)));
+    }
+
+    /**
+     * Sequence of the last snapshot written or read through this instance
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long sequence() {
+        return (long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET);
+    }
+
+    private void map(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("shared snapshot too large: " + size + " bytes");
+        }
+        buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private byte[] encode(FeatureSnapshot snapshot) {
+        byte[] etag = bytes(snapshot.getEtag());
+        byte[] lastModified = bytes(snapshot.getLastModified());
+        byte[] payloadHash = bytes(snapshot.getPayloadHash());
+        String featuresJson = snapshot.getFeaturesJson();
+        byte[] features = (cipher != null ? cipher.encrypt(featuresJson) : featuresJson).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(4 * Integer.BYTES
+                + length(etag) + length(lastModified) + length(payloadHash) + features.length);
+        putString(body, etag);
+        putString(body, lastModified);
+        putString(body, payloadHash);
+        putString(body, features);
+        return body.array();
+    }
+
+    private PersistedFeatures decode(byte[] body, Instant publishedAt) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        String etag = readString(buffer);
+        String lastModified = readString(buffer);
+        String payloadHash = readString(buffer);
+        String featuresJson = readString(buffer);
+        if (cipher != null) {
+            try {
+                featuresJson = cipher.decrypt(featuresJson);
+            } catch (FeatureFlagException e) {
+                throw new IOException("could not decrypt " + file + " with the configured key", e);
+            }
+        }
+        return new PersistedFeatures(featuresJson, etag, lastModified, payloadHash, publishedAt);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,248 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+/**
+ * Last-known-good features on local disk, so the service can start serving
+ * immediately (and without the GrowthBook API) from the previous run's snapshot.
+ *
+ * File layout (big-endian): magic, savedAt millis, etag, lastModified, payloadHash
+ * (each as length-prefixed UTF-8, -1 for null), payload length, payload, then a
+ * CRC32C over everything before it. Files are written to a temp file and moved
+ * into place atomically; reads are memory-mapped and verified before use.
+ * Published snapshots are saved on the store's own thread ({@link #saveLater}), so a
+ * refresh never waits on the disk, and a burst of publishes is one write of the latest.
+ * The directory and file are created owner-only ({@link PrivateFiles}). With a decryption key
+ * configured the features are stored encrypted with it (magic GBE1), as GrowthBook serves them.
+ */
+@Slf4j
+@Component
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x47425331; // "GBS1"
+    private static final int MAGIC_ENCRYPTED = 0x47424531; // "GBE1"
+    private static final int CHECKSUM_BYTES = Long.BYTES;
+
+    private final boolean enabled;
+    private final Path file;
+    private final FeatureCipher cipher;
+    private final ExecutorService writer;
+    private final AtomicReference<FeatureSnapshot> pending = new AtomicReference<>();
+    /**
+     * Only touched on the writer thread
+     */
+    private long savedVersion;
+    private volatile boolean restored;
+
+    public SnapshotStore(GrowthBookProperties properties) {
+        GrowthBookProperties.Persistence config = properties.getPersistence();
+        this.enabled = config.isEnabled();
+        this.file = Path.of(config.getDirectory()).resolve(properties.getClientKey() + ".snapshot");
+        this.cipher = FeatureCipher.forKey(properties.getDecryptionKey());
+        this.writer = Executors.newSingleThreadExecutor(properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("snapshot-store").factory()
+                : Thread.ofPlatform().daemon().name("snapshot-store").factory());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the current process started from the snapshot on disk rather than a live fetch
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    public Optional<PersistedFeatures> load() {
+        if (!enabled || !Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Integer.BYTES + CHECKSUM_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("unexpected file size " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(0, (int) size - CHECKSUM_BYTES));
+            if (crc.getValue() != buffer.getLong((int) size - CHECKSUM_BYTES)) {
+                throw new IOException("checksum mismatch");
+            }
+            int magic = buffer.getInt();
+            if (magic != MAGIC && magic != MAGIC_ENCRYPTED) {
+                throw new IOException("unknown file format");
+            }
+            if (magic == MAGIC_ENCRYPTED && cipher == null) {
+                throw new IOException("snapshot is encrypted and no decryption key is configured");
+            }
+            Instant savedAt = Instant.ofEpochMilli(buffer.getLong());
+            String etag = readString(buffer);
+            String lastModified = readString(buffer);
+            String payloadHash = readString(buffer);
+            int payloadLength = buffer.getInt();
+            String payload = StandardCharsets.UTF_8
+                    .decode(buffer.slice(buffer.position(), payloadLength))
+                    .toString();
+            // A plain file from before the key was configured still loads; the next save encrypts it
+            String featuresJson = magic == MAGIC_ENCRYPTED ? cipher.decrypt(payload) : payload;
+
+            restored = true;
+            log.info("Loaded feature snapshot from {} ({} bytes, saved {})", file, payloadLength, savedAt);
+            return Optional.of(new PersistedFeatures(featuresJson, etag, lastModified, payloadHash, savedAt));
+        } catch (Exception e) {
+            log.warn("Ignoring unreadable feature snapshot {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Saves in the background. A snapshot published while a save is running replaces any other
+     * still waiting, and one older than the last saved is dropped.
+     */
+    public void saveLater(FeatureSnapshot snapshot) {
+        if (!enabled) {
+            return;
+        }
+        FeatureSnapshot waiting = pending.getAndUpdate(
+                other -> other == null || other.getVersion() < snapshot.getVersion() ? snapshot : other);
+        if (waiting != null) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                FeatureSnapshot latest = pending.getAndSet(null);
+                if (latest.getVersion() > savedVersion) {
+                    save(latest);
+                    savedVersion = latest.getVersion();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.set(null);
+            log.debug("Snapshot store is shut down, not saving snapshot v{}", snapshot.getVersion());
+        }
+    }
+
+    /**
+     * Writes the snapshot waiting to be saved, if any, before the application stops
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Feature snapshot save still running at shutdown");
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * Saves on the calling thread
+     */
+    public void save(FeatureSnapshot snapshot) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            PrivateFiles.createDirectories(file.getParent());
+            Path temp = PrivateFiles.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                write(temp, snapshot);
+                move(temp);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            log.debug("Saved feature snapshot v{} to {}", snapshot.getVersion(), file);
+        } catch (IOException e) {
+            log.warn("Could not save feature snapshot to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void write(Path target, FeatureSnapshot snapshot) throws IOException {
+        String featuresJson = snapshot.getFeaturesJson();
+        byte[] payload = (cipher != null ? cipher.encrypt(featuresJson) : featuresJson).getBytes(StandardCharsets.UTF_8);
+        byte[] etag = bytes(snapshot.getEtag());
+        byte[] lastModified = bytes(snapshot.getLastModified());
+        byte[] payloadHash = bytes(snapshot.getPayloadHash());
+
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES
+                + 3 * Integer.BYTES + length(etag) + length(lastModified) + length(payloadHash)
+                + Integer.BYTES);
+        header.putInt(cipher != null ? MAGIC_ENCRYPTED : MAGIC).putLong(System.currentTimeMillis());
+        putString(header, etag);
+        putString(header, lastModified);
+        putString(header, payloadHash);
+        header.putInt(payload.length).flip();
+
+        ByteBuffer body = ByteBuffer.wrap(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(header.duplicate());
+        crc.update(body.duplicate());
+        ByteBuffer checksum = ByteBuffer.allocate(CHECKSUM_BYTES).putLong(crc.getValue()).flip();
+
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, body, checksum};
+            while (checksum.hasRemaining()) {
+                channel.write(buffers);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void move(Path temp) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,314 @@
+package dev.scastillo.feature_flags.stream;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.client.FeatureEvaluation;
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes feature snapshot changes to Server-Sent Events subscribers.
+ * Connections are async servlet requests (no thread is parked per subscriber);
+ * each change is serialized once and the same payload is queued for every emitter.
+ * Diffs are computed on one sender thread, so every subscriber sees changes in publish order
+ * and a refresh never waits on clients. Each subscriber then has its own bounded queue, written
+ * by its own short-lived task only while events are pending: a slow client delays nobody else,
+ * and one whose queue fills up is considered stalled and dropped.
+ * Event ids are the snapshot content hash, which means the same features on every replica
+ * and across restarts, so it is a valid Last-Event-ID wherever the client reconnects.
+ */
+@Slf4j
+@Component
+public class FeatureChangeBroadcaster {
+
+    static final String SNAPSHOT_EVENT = "snapshot";
+    static final String CHANGES_EVENT = "changes";
+
+    private final GrowthBookClient growthBookClient;
+    private final GrowthBookProperties.Stream config;
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    /**
+     * Subscriber slots taken, including subscribers still waiting for their initial state
+     */
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final ExecutorService sender;
+    private final ExecutorService writers;
+    private final Gson gson = new Gson();
+    /**
+     * Last snapshot sent to subscribers; only read and written on the sender thread
+     */
+    private FeatureSnapshot broadcast;
+
+    public FeatureChangeBroadcaster(GrowthBookClient growthBookClient, GrowthBookProperties properties,
+                                    FeatureSnapshotHolder snapshotHolder) {
+        this.growthBookClient = growthBookClient;
+        this.config = properties.getStream();
+        this.sender = Executors.newSingleThreadExecutor(properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("feature-stream-sender").factory()
+                : Thread.ofPlatform().daemon().name("feature-stream-sender").factory());
+        this.writers = Executors.newThreadPerTaskExecutor(properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("feature-stream-writer-", 0).factory()
+                : Thread.ofPlatform().daemon().name("feature-stream-writer-", 0).factory());
+        this.broadcast = snapshotHolder.current();
+        snapshotHolder.addListener(this::onSnapshotPublished);
+    }
+
+    /**
+     * Registers a subscriber. Unless Last-Event-ID names the current content, the full current
+     * state is sent first so the client can resume. The subscriber is queued behind pending
+     * changes and only receives changes published after that state.
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        if (reserved.incrementAndGet() > config.getMaxSubscribers()) {
+            reserved.decrementAndGet();
+            throw new FeatureFlagException("Too many feature stream subscribers");
+        }
+        SseEmitter emitter = newEmitter();
+        Subscriber subscriber = new Subscriber(emitter, config.getSubscriberQueue());
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        if (!submit(() -> {
+            FeatureSnapshot snapshot = broadcast;
+            if (!snapshot.getContentHash().equals(lastEventId)) {
+                String payload = buildPayload(snapshot, snapshot.getFeatureKeys(), Set.of());
+                enqueue(subscriber, event(snapshot, SNAPSHOT_EVENT, payload));
+            }
+            subscribers.add(subscriber);
+            // Closed while its state was being queued: remove() may have run before the add
+            if (subscriber.closed.get()) {
+                subscribers.remove(subscriber);
+                return;
+            }
+            log.debug("Feature stream subscriber added ({} total)", subscribers.size());
+        })) {
+            remove(subscriber);
+        }
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    SseEmitter newEmitter() {
+        return new SseEmitter(config.getTimeoutMs());
+    }
+
+    void onSnapshotPublished(FeatureSnapshot previous, FeatureSnapshot current) {
+        submit(() -> broadcast(current));
+    }
+
+    /**
+     * Keeps idle connections alive through proxies and detects dead or stalled clients.
+     * Queued like any other event, so a slow client never holds up the shared scheduler.
+     */
+    @Scheduled(fixedDelayString = "${growthbook.stream.heartbeat-seconds:30}000")
+    public void heartbeat() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        submit(() -> {
+            for (Subscriber subscriber : subscribers) {
+                enqueue(subscriber, SseEmitter.event().comment("heartbeat"));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    /**
+     * Diffs against the last broadcast snapshot rather than the listener's previous one, so a
+     * late notification for an older snapshot is dropped instead of rolling clients back.
+     */
+    private void broadcast(FeatureSnapshot current) {
+        FeatureSnapshot previous = broadcast;
+        if (current.getVersion() <= previous.getVersion()) {
+            return;
+        }
+        broadcast = current;
+        if (subscribers.isEmpty() || current.getContentHash().equals(previous.getContentHash())) {
+            return;
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        Set<String> removed = new LinkedHashSet<>();
+        diff(previous, current, changed, removed);
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        String payload = buildPayload(current, changed, removed);
+        log.debug("Broadcasting {} changed / {} removed features (v{}) to {} subscribers",
+                changed.size(), removed.size(), current.getVersion(), subscribers.size());
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, event(current, CHANGES_EVENT, payload));
+        }
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            sender.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Feature stream sender is shut down");
+            return false;
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder event(FeatureSnapshot snapshot, String name, String payload) {
+        return SseEmitter.event()
+                .id(snapshot.getContentHash())
+                .name(name)
+                .data(payload);
+    }
+
+    /**
+     * Queues an event for one subscriber and starts its writer if none is running.
+     * A full queue means the client has stopped reading: it is dropped rather than waited for.
+     */
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (subscriber.closed.get()) {
+            return;
+        }
+        if (!subscriber.pending.offer(event)) {
+            log.debug("Feature stream subscriber stalled with {} pending events, dropping it", subscriber.pending.size());
+            drop(subscriber, new IOException("Subscriber stalled"));
+            return;
+        }
+        if (subscriber.writing.compareAndSet(false, true)) {
+            try {
+                writers.execute(() -> write(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.writing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes a subscriber's pending events in order, then exits; the next enqueue starts a new writer
+     */
+    private void write(Subscriber subscriber) {
+        while (true) {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.pending.poll()) != null) {
+                try {
+                    subscriber.emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    drop(subscriber, e);
+                    return;
+                }
+            }
+            subscriber.writing.set(false);
+            // An event queued after the last poll but before the flag was cleared started no writer
+            if (subscriber.pending.isEmpty() || !subscriber.writing.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void drop(Subscriber subscriber, Throwable cause) {
+        if (remove(subscriber)) {
+            subscriber.emitter.completeWithError(cause);
+        }
+    }
+
+    /**
+     * Unregisters a subscriber and frees its slot, once however many paths report it gone
+     */
+    private boolean remove(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        subscribers.remove(subscriber);
+        subscriber.pending.clear();
+        reserved.decrementAndGet();
+        return true;
+    }
+
+    private void diff(FeatureSnapshot previous, FeatureSnapshot current, Set<String> changed, Set<String> removed) {
+        JsonObject before = parseFeatures(previous.getFeaturesJson());
+        JsonObject after = parseFeatures(current.getFeaturesJson());
+        for (String key : after.keySet()) {
+            if (!after.get(key).equals(before.get(key))) {
+                changed.add(key);
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.has(key)) {
+                removed.add(key);
+            }
+        }
+    }
+
+    private String buildPayload(FeatureSnapshot snapshot, Collection<String> changed, Collection<String> removed) {
+        JsonArray features = new JsonArray();
+        for (String key : changed) {
+            JsonObject feature = new JsonObject();
+            feature.addProperty("featureKey", key);
+            FeatureEvaluation evaluation = growthBookClient.evaluate(snapshot, key);
+            feature.addProperty("enabled", evaluation.isOn());
+            feature.add("value", evaluation.getValue() != null ? gson.toJsonTree(evaluation.getValue()) : JsonNull.INSTANCE);
+            features.add(feature);
+        }
+        JsonArray removedKeys = new JsonArray();
+        removed.forEach(removedKeys::add);
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("version", snapshot.getVersion());
+        payload.addProperty("contentHash", snapshot.getContentHash());
+        payload.add("features", features);
+        payload.add("removed", removedKeys);
+        return gson.toJson(payload);
+    }
+
+    private static JsonObject parseFeatures(String featuresJson) {
+        try {
+            JsonElement parsed = JsonParser.parseString(featuresJson);
+            return parsed.isJsonObject() ? parsed.getAsJsonObject() : new JsonObject();
+        } catch (Exception e) {
+            return new JsonObject();
+        }
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> pending;
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Subscriber(SseEmitter emitter, int capacity) {
+            this.emitter = emitter;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+}
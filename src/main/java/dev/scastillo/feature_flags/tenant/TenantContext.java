@@ -0,0 +1,38 @@
+package dev.scastillo.feature_flags.tenant;
+
+import java.util.function.Supplier;
+
+/**
+ * Client key selected for the current request. Empty means the default client key from
+ * {@code growthbook.client-key}. Set by {@link TenantInterceptor}; work handed to other
+ * threads must carry the key over with {@link #callAs(String, Supplier)}.
+ */
+public final class TenantContext {
+
+    private static final ThreadLocal<String> CLIENT_KEY = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    public static String currentClientKey() {
+        return CLIENT_KEY.get();
+    }
+
+    public static <T> T callAs(String clientKey, Supplier<T> work) {
+        String previous = CLIENT_KEY.get();
+        set(clientKey);
+        try {
+            return work.get();
+        } finally {
+            set(previous);
+        }
+    }
+
+    static void set(String clientKey) {
+        if (clientKey == null) {
+            CLIENT_KEY.remove();
+        } else {
+            CLIENT_KEY.set(clientKey);
+        }
+    }
+}
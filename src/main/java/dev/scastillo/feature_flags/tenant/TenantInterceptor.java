@@ -0,0 +1,59 @@
+package dev.scastillo.feature_flags.tenant;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+/**
+ * Selects the client key for feature endpoints: the {clientKey} path variable of
+ * /api/clients/{clientKey}/features/**, else the X-GrowthBook-Client-Key header.
+ * Keys this instance doesn't serve are answered with 404.
+ */
+@Component
+@RequiredArgsConstructor
+public class TenantInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String CLIENT_KEY_HEADER = "X-GrowthBook-Client-Key";
+    private static final String CLIENT_KEY_VARIABLE = "clientKey";
+
+    private final TenantRegistry tenantRegistry;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        String clientKey = pathClientKey(request);
+        if (clientKey == null) {
+            clientKey = request.getHeader(CLIENT_KEY_HEADER);
+        }
+        if (clientKey == null || clientKey.isBlank()) {
+            return true;
+        }
+        if (!tenantRegistry.isServed(clientKey)) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "Unknown client key");
+            return false;
+        }
+        TenantContext.set(tenantRegistry.isDefault(clientKey) ? null : clientKey);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        TenantContext.set(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        TenantContext.set(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String pathClientKey(HttpServletRequest request) {
+        Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables instanceof Map<?, ?> map ? ((Map<String, String>) map).get(CLIENT_KEY_VARIABLE) : null;
+    }
+}
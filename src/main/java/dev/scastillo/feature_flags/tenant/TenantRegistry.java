@@ -0,0 +1,241 @@
+package dev.scastillo.feature_flags.tenant;
+
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshots for client keys other than the default growthbook.client-key.
+ * Each tenant has its own snapshot holder and client, loaded on first use and refreshed
+ * at its own cadence on a shared pool of growthbook.tenancy.refresh-pool-size threads.
+ * Like the default client's RefreshCoordinator, refreshes of one tenant never overlap: a request
+ * made while one runs joins a single follow-up refresh.
+ * At most max-tenants are kept, and their features JSON stays under max-payload-bytes;
+ * beyond that the least recently used tenants are dropped and reloaded on demand.
+ */
+@Slf4j
+@Component
+public class TenantRegistry {
+
+    private final GrowthBookProperties properties;
+    private final HttpClient httpClient;
+    private final FeatureFlagMetrics metrics;
+    private final ExposureTracker exposureTracker;
+    private final GrowthBookProperties.Tenancy tenancy;
+    private final Map<String, GrowthBookProperties.Tenant> configured = new LinkedHashMap<>();
+    private final ScheduledExecutorService refreshPool;
+
+    // guarded by this, in access order
+    private final LinkedHashMap<String, Tenant> tenants = new LinkedHashMap<>(16, 0.75f, true);
+
+    public TenantRegistry(GrowthBookProperties properties, HttpClient httpClient, FeatureFlagMetrics metrics,
+                          ExposureTracker exposureTracker) {
+        this.properties = properties;
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+        this.exposureTracker = exposureTracker;
+        this.tenancy = properties.getTenancy();
+        for (GrowthBookProperties.Tenant tenant : tenancy.getTenants()) {
+            configured.put(tenant.getClientKey(), tenant);
+        }
+        this.refreshPool = Executors.newScheduledThreadPool(tenancy.getRefreshPoolSize(), properties.isVirtualThreads()
+                ? Thread.ofVirtual().name("growthbook-tenant-refresh-", 0).factory()
+                : Thread.ofPlatform().daemon().name("growthbook-tenant-refresh-", 0).factory());
+    }
+
+    public boolean isDefault(String clientKey) {
+        return clientKey.equals(properties.getClientKey());
+    }
+
+    /**
+     * Whether requests for this client key can be served: the default key, a configured tenant, or any key when allowed
+     */
+    public boolean isServed(String clientKey) {
+        return isDefault(clientKey) || configured.containsKey(clientKey) || tenancy.isAllowUnlisted();
+    }
+
+    /**
+     * Client for a tenant, loading its features on first use. Callers wait for that first load only.
+     */
+    public GrowthBookClient clientFor(String clientKey) {
+        if (!isServed(clientKey) || isDefault(clientKey)) {
+            throw new FeatureFlagException("Client key is not served by this instance: " + clientKey);
+        }
+        Tenant tenant;
+        synchronized (this) {
+            tenant = tenants.get(clientKey);
+            if (tenant == null) {
+                tenant = register(clientKey);
+            }
+        }
+        tenant.ready.join();
+        return tenant.client;
+    }
+
+    /**
+     * Refreshes a tenant's features, loading it first if needed; the future completes when the
+     * refresh covering this request has finished (exceptionally if it failed).
+     */
+    public CompletableFuture<Void> refresh(String clientKey) {
+        clientFor(clientKey);
+        Tenant tenant;
+        synchronized (this) {
+            tenant = tenants.get(clientKey);
+        }
+        // Evicted in between: the reload above already fetched its features
+        return tenant != null ? requestRefresh(tenant) : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Client keys currently loaded, most recently used last
+     */
+    public synchronized List<String> loadedClientKeys() {
+        return new ArrayList<>(tenants.keySet());
+    }
+
+    private Tenant register(String clientKey) {
+        GrowthBookProperties.Tenant config = configured.get(clientKey);
+        GrowthBookProperties tenantProperties = new GrowthBookProperties();
+        tenantProperties.setEnabled(properties.isEnabled());
+        tenantProperties.setEngine(properties.getEngine());
+        tenantProperties.setVirtualThreads(properties.isVirtualThreads());
+        tenantProperties.setClientKey(clientKey);
+        tenantProperties.setApiHost(config != null && config.getApiHost() != null ? config.getApiHost() : properties.getApiHost());
+        tenantProperties.setDecryptionKey(config != null ? config.getDecryptionKey() : null);
+        int ttlSeconds = config != null && config.getTtlSeconds() != null
+                ? config.getTtlSeconds()
+                : properties.getCache().getTtlSeconds();
+
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder("{}", tenantProperties);
+        Tenant tenant = new Tenant(clientKey, snapshotHolder,
+                new GrowthBookClient(tenantProperties, httpClient, snapshotHolder, metrics, exposureTracker));
+        tenants.put(clientKey, tenant);
+
+        // First load off the caller's lock; then refresh at the tenant's cadence, jittered so tenants don't align
+        requestRefresh(tenant).whenComplete((ignored, e) -> tenant.ready.complete(null));
+        long jitter = ThreadLocalRandom.current().nextLong(ttlSeconds * 1000L + 1);
+        tenant.schedule = refreshPool.scheduleWithFixedDelay(() -> requestRefresh(tenant),
+                ttlSeconds * 1000L + jitter, ttlSeconds * 1000L, TimeUnit.MILLISECONDS);
+        log.info("Registered tenant {} (refresh every {}s, {} tenants loaded)", clientKey, ttlSeconds, tenants.size());
+
+        enforceLimits();
+        return tenant;
+    }
+
+    private CompletableFuture<Void> requestRefresh(Tenant tenant) {
+        synchronized (tenant) {
+            CompletableFuture<Void> future = tenant.pending;
+            if (future == null) {
+                future = new CompletableFuture<>();
+                tenant.pending = future;
+                if (!tenant.running) {
+                    startRefresh(tenant);
+                }
+            }
+            return future;
+        }
+    }
+
+    // guarded by tenant
+    private void startRefresh(Tenant tenant) {
+        CompletableFuture<Void> future = tenant.pending;
+        tenant.pending = null;
+        tenant.running = true;
+        refreshPool.execute(() -> refresh(tenant, future));
+    }
+
+    private void refresh(Tenant tenant, CompletableFuture<Void> future) {
+        try {
+            if (!tenant.evicted) {
+                tenant.client.refreshFeatures();
+            }
+            future.complete(null);
+        } catch (Exception e) {
+            log.warn("Failed to refresh tenant {}: {}", tenant.clientKey, e.getMessage());
+            future.completeExceptionally(e);
+        } finally {
+            synchronized (tenant) {
+                tenant.running = false;
+                if (tenant.pending != null) {
+                    startRefresh(tenant);
+                }
+            }
+        }
+        synchronized (this) {
+            enforceLimits();
+        }
+    }
+
+    // guarded by this
+    private void enforceLimits() {
+        long payloadBytes = 0;
+        for (Tenant tenant : tenants.values()) {
+            payloadBytes += tenant.payloadBytes();
+        }
+        Iterator<Tenant> eldest = tenants.values().iterator();
+        while (eldest.hasNext() && tenants.size() > 1
+                && (tenants.size() > tenancy.getMaxTenants() || payloadBytes > tenancy.getMaxPayloadBytes())) {
+            Tenant evicted = eldest.next();
+            eldest.remove();
+            payloadBytes -= evicted.payloadBytes();
+            // A refresh in flight must not publish for, or keep paying for, a dropped tenant
+            evicted.evicted = true;
+            evicted.snapshotHolder.retire();
+            if (evicted.schedule != null) {
+                evicted.schedule.cancel(false);
+            }
+            log.info("Evicted tenant {} ({} tenants loaded)", evicted.clientKey, tenants.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshPool.shutdownNow();
+    }
+
+    private static final class Tenant {
+
+        private final String clientKey;
+        private final FeatureSnapshotHolder snapshotHolder;
+        private final GrowthBookClient client;
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+        private ScheduledFuture<?> schedule;
+        private volatile boolean evicted;
+
+        // guarded by this: the refresh waiting to start, and whether one is running
+        private CompletableFuture<Void> pending;
+        private boolean running;
+
+        private Tenant(String clientKey, FeatureSnapshotHolder snapshotHolder, GrowthBookClient client) {
+            this.clientKey = clientKey;
+            this.snapshotHolder = snapshotHolder;
+            this.client = client;
+        }
+
+        /**
+         * Approximate footprint: the features JSON held by the snapshot (UTF-16 chars)
+         */
+        private long payloadBytes() {
+            return snapshotHolder.current().getFeaturesJson().length() * 2L;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package dev.scastillo.feature_flags.tracking;
+
+import lombok.Value;
+
+/**
+ * One user seen in one experiment variation, as written to the exposure sink.
+ */
+@Value
+public class ExposureEvent {
+    String experimentKey;
+    int variationId;
+    String featureKey;
+    String hashAttribute;
+    String hashValue;
+    /**
+     * Epoch milliseconds
+     */
+    long timestamp;
+}
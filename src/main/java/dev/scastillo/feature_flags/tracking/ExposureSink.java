@@ -0,0 +1,18 @@
+package dev.scastillo.feature_flags.tracking;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination for exposure events. Called from the tracker's single drain thread, one batch at a time.
+ * Declare another bean of this type to replace the default NDJSON files.
+ */
+public interface ExposureSink extends Closeable {
+
+    void write(List<ExposureEvent> batch) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
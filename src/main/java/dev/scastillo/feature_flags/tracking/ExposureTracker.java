@@ -0,0 +1,223 @@
+package dev.scastillo.feature_flags.tracking;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.engine.EvaluationResult;
+import growthbook.sdk.java.Experiment;
+import growthbook.sdk.java.ExperimentResult;
+import growthbook.sdk.java.TrackingCallback;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Collects experiment exposures off the request path. Evaluations only de-duplicate and offer the event
+ * to a bounded lock-free ring; one background thread drains it in batches to the {@link ExposureSink}.
+ * When the ring is full the event is dropped (the newest, or the oldest queued one, per drop-policy)
+ * and counted, so a slow sink never slows evaluations down. A dropped exposure is forgotten by the
+ * de-duplication, so the user's next exposure to that experiment is recorded.
+ * The drain thread starts once the bean is fully built ({@link #start}).
+ * Also the SDK's TrackingCallback, so the same tracker serves both evaluation engines.
+ */
+@Slf4j
+@Component
+public class ExposureTracker implements TrackingCallback {
+
+    private final boolean enabled;
+    private final GrowthBookProperties.DropPolicy dropPolicy;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final ExposureSink sink;
+    private final ExposureRingBuffer<ExposureEvent> buffer;
+    /**
+     * User/experiment pairs seen within the de-duplication window; null when de-duplication is off
+     */
+    private final Cache<String, Boolean> recentExposures;
+    private final Counter queued;
+    private final Counter deduplicated;
+    private final Counter dropped;
+    private final Counter written;
+    private final Counter failed;
+    private final boolean virtualThreads;
+    private volatile Thread worker;
+    private volatile boolean running = true;
+
+    public ExposureTracker(GrowthBookProperties properties, MeterRegistry registry, ExposureSink sink) {
+        GrowthBookProperties.Tracking tracking = properties.getTracking();
+        this.enabled = tracking.isEnabled();
+        this.dropPolicy = tracking.getDropPolicy();
+        this.batchSize = Math.max(1, tracking.getBatchSize());
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tracking.getFlushIntervalMs()));
+        this.sink = sink;
+        this.buffer = new ExposureRingBuffer<>(tracking.getBufferCapacity());
+        this.recentExposures = tracking.getDedupWindowSeconds() > 0
+                ? Caffeine.newBuilder()
+                        .expireAfterWrite(Duration.ofSeconds(tracking.getDedupWindowSeconds()))
+                        .maximumSize(tracking.getDedupMaxEntries())
+                        .build()
+                : null;
+
+        this.queued = exposureCounter(registry, "queued");
+        this.deduplicated = exposureCounter(registry, "deduplicated");
+        this.dropped = exposureCounter(registry, "dropped");
+        this.written = exposureCounter(registry, "written");
+        this.failed = exposureCounter(registry, "failed");
+        Gauge.builder("feature_flags.exposures.queue", buffer, ExposureRingBuffer::size)
+                .description("Exposure events waiting to be written")
+                .register(registry);
+
+        this.virtualThreads = properties.isVirtualThreads();
+    }
+
+    /**
+     * Starts the drain thread; until then exposures are only queued
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || worker != null || !running) {
+            return;
+        }
+        worker = (virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon(true))
+                .name("exposure-drain")
+                .start(this::drain);
+    }
+
+    /**
+     * Records the exposure behind a compiled-engine result; a no-op unless it came from an experiment
+     */
+    public void track(String featureKey, EvaluationResult result, Map<String, Object> attributes) {
+        if (!enabled || result.getExperimentKey() == null) {
+            return;
+        }
+        Object hashValue = attributes == null ? null : attributes.get(result.getHashAttribute());
+        track(new ExposureEvent(result.getExperimentKey(), result.getVariationId(), featureKey,
+                result.getHashAttribute(), hashValue == null ? null : hashValue.toString(), System.currentTimeMillis()));
+    }
+
+    @Override
+    public <ValueType> void onTrack(Experiment<ValueType> experiment, ExperimentResult<ValueType> result) {
+        if (!enabled) {
+            return;
+        }
+        Integer variationId = result.getVariationId();
+        track(new ExposureEvent(experiment.getKey(), variationId == null ? -1 : variationId, result.getFeatureId(),
+                result.getHashAttribute(), result.getHashValue(), System.currentTimeMillis()));
+    }
+
+    /**
+     * Queues an exposure without blocking: repeats inside the window are skipped, and a full ring drops per policy
+     */
+    public void track(ExposureEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // Claimed before queueing so concurrent repeats are skipped; released again if the event is dropped
+        if (recentExposures != null && recentExposures.asMap().putIfAbsent(dedupKey(event), Boolean.TRUE) != null) {
+            deduplicated.increment();
+            return;
+        }
+        if (buffer.offer(event)) {
+            queued.increment();
+            return;
+        }
+        if (dropPolicy == GrowthBookProperties.DropPolicy.DROP_OLDEST) {
+            ExposureEvent oldest = buffer.poll();
+            if (oldest != null) {
+                forget(oldest);
+                dropped.increment();
+                if (buffer.offer(event)) {
+                    queued.increment();
+                    return;
+                }
+            }
+        }
+        forget(event);
+        dropped.increment();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Events waiting in the ring
+     */
+    public int queueDepth() {
+        return buffer.size();
+    }
+
+    private void drain() {
+        List<ExposureEvent> batch = new ArrayList<>(batchSize);
+        while (running || buffer.size() > 0) {
+            ExposureEvent event;
+            while (batch.size() < batchSize && (event = buffer.poll()) != null) {
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                continue;
+            }
+            try {
+                sink.write(batch);
+                written.increment(batch.size());
+            } catch (Exception e) {
+                // The batch is lost rather than retried: retrying would back the ring up behind a broken sink
+                failed.increment(batch.size());
+                log.error("Error writing {} exposures: {}", batch.size(), e.getMessage());
+            }
+            batch.clear();
+        }
+    }
+
+    private static String dedupKey(ExposureEvent event) {
+        return event.getExperimentKey() + '\u0000' + event.getHashAttribute() + '\u0000' + event.getHashValue();
+    }
+
+    private void forget(ExposureEvent event) {
+        if (recentExposures != null) {
+            recentExposures.invalidate(dedupKey(event));
+        }
+    }
+
+    /**
+     * Stops the drain thread after it has written what is still queued; drains here if it never started
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        Thread drainer;
+        synchronized (this) {
+            running = false;
+            drainer = worker;
+        }
+        if (drainer != null) {
+            LockSupport.unpark(drainer);
+            drainer.join(TimeUnit.SECONDS.toMillis(5));
+        } else if (enabled) {
+            drain();
+        }
+        try {
+            sink.close();
+        } catch (Exception e) {
+            log.warn("Error closing exposure sink: {}", e.getMessage());
+        }
+    }
+
+    private static Counter exposureCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("feature_flags.exposures")
+                .description("Experiment exposures, by what happened to them")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.scastillo.feature_flags.tracking;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Writes exposures as NDJSON, one event per line, to exposures-{utc time}-{n}.ndjson files.
+ * A new file is started once the current one reaches maxFileBytes or gets older than maxFileAge,
+ * so closed files can be shipped and deleted while the service keeps writing.
+ */
+@Slf4j
+public class RollingNdjsonExposureSink implements ExposureSink {
+
+    private static final Gson GSON = new Gson();
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+            .withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final Duration maxFileAge;
+
+    private OutputStream out;
+    private Path file;
+    private long fileBytes;
+    private Instant openedAt;
+    private int sequence;
+
+    public RollingNdjsonExposureSink(Path directory, long maxFileBytes, Duration maxFileAge) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileAge = maxFileAge;
+    }
+
+    @Override
+    public synchronized void write(List<ExposureEvent> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder(batch.size() * 160);
+        for (ExposureEvent event : batch) {
+            GSON.toJson(event, lines);
+            lines.append('\n');
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (out == null || fileBytes >= maxFileBytes
+                || Duration.between(openedAt, Instant.now()).compareTo(maxFileAge) >= 0) {
+            roll();
+        }
+        out.write(bytes);
+        // One flush per batch: a crash loses at most the batch being written
+        out.flush();
+        fileBytes += bytes.length;
+    }
+
+    /**
+     * File currently written to, null before the first batch
+     */
+    public synchronized Path currentFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        close();
+        Files.createDirectories(directory);
+        openedAt = Instant.now();
+        file = directory.resolve("exposures-" + FILE_TIME.format(openedAt) + "-" + sequence++ + ".ndjson");
+        out = new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+        fileBytes = Files.size(file);
+        log.info("Writing experiment exposures to {}", file);
+    }
+}
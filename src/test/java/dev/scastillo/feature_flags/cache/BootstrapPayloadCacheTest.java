@@ -0,0 +1,108 @@
+package dev.scastillo.feature_flags.cache;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.snapshot.FeatureCipher;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BootstrapPayloadCacheTest {
+
+    private static final String FEATURES = "{"
+            + "\"dark-mode\":{\"defaultValue\":false,\"rules\":[{\"condition\":{\"country\":\"CO\"},\"force\":true}]},"
+            + "\"banner\":{\"defaultValue\":\"hello\"},"
+            + "\"limits\":{\"defaultValue\":{\"max\":10}}"
+            + "}";
+
+    private final GrowthBookProperties properties = new GrowthBookProperties();
+    private final FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder(FEATURES, properties);
+    private final BootstrapPayloadCache cache = new BootstrapPayloadCache(properties);
+
+    @Test
+    void payloadIsEncodedOncePerSnapshotAndGzipMatchesJson() throws IOException {
+        var payload = cache.get(snapshotHolder.current(), List.of());
+
+        assertSame(payload, cache.get(snapshotHolder.current(), List.of()));
+        assertEquals(3, payload.getFeatureCount());
+        assertArrayEquals(payload.getJson(), gunzip(payload.getGzip()));
+        JsonObject body = JsonParser.parseString(new String(payload.getJson(), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(200, body.get("status").getAsInt());
+        assertEquals(JsonParser.parseString(FEATURES), body.get("features"));
+    }
+
+    @Test
+    void subsetKeepsOnlyKnownRequestedKeysInAnyOrder() {
+        var subset = cache.get(snapshotHolder.current(), List.of("limits", "banner", "missing"));
+
+        assertSame(subset, cache.get(snapshotHolder.current(), List.of("missing", "banner", "limits")));
+        assertEquals(2, subset.getFeatureCount());
+        JsonObject features = JsonParser.parseString(new String(subset.getJson(), StandardCharsets.UTF_8))
+                .getAsJsonObject().getAsJsonObject("features");
+        assertEquals(Set.of("banner", "limits"), features.keySet());
+    }
+
+    @Test
+    void unknownKeysDoNotMakeNewPayloads() {
+        var subset = cache.get(snapshotHolder.current(), List.of("banner"));
+        var all = cache.get(snapshotHolder.current(), List.of());
+
+        assertSame(subset, cache.get(snapshotHolder.current(), List.of("banner", "unknown-1", "unknown-2")));
+        assertSame(all, cache.get(snapshotHolder.current(), List.of("banner", "dark-mode", "limits", "unknown")));
+        var none = cache.get(snapshotHolder.current(), List.of("unknown"));
+        assertSame(none, cache.get(snapshotHolder.current(), List.of("other-unknown")));
+        assertEquals(0, none.getFeatureCount());
+    }
+
+    @Test
+    void etagFollowsContentAcrossSnapshots() {
+        var first = cache.get(snapshotHolder.current(), List.of());
+        var sameContent = cache.get(snapshotHolder.update(FEATURES), List.of());
+        var changed = cache.get(snapshotHolder.update("{\"banner\":{\"defaultValue\":\"bye\"}}"), List.of());
+
+        assertNotEquals(first.getSnapshotVersion(), sameContent.getSnapshotVersion());
+        assertEquals(first.getEtag(), sameContent.getEtag());
+        assertNotEquals(first.getEtag(), changed.getEtag());
+
+        assertTrue(first.matches(first.getEtag()));
+        assertTrue(first.matches("W/" + first.gzipEtag()));
+        assertTrue(first.matches("\"other\", " + first.getEtag()));
+        assertFalse(changed.matches(first.getEtag()));
+        assertFalse(first.matches(null));
+    }
+
+    @Test
+    void encryptedConnectionsGetFeaturesEncryptedAgain() {
+        FeatureCipher cipher = FeatureCipher.forKey(
+                Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.UTF_8)));
+        var plain = cache.get(snapshotHolder.current(), List.of("banner"));
+        var encrypted = new BootstrapPayloadCache(properties).get(snapshotHolder.current(), List.of("banner"), cipher);
+
+        JsonObject body = JsonParser.parseString(new String(encrypted.getJson(), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertTrue(body.getAsJsonObject("features").isEmpty());
+        assertEquals(JsonParser.parseString("{\"banner\":{\"defaultValue\":\"hello\"}}"),
+                JsonParser.parseString(cipher.decrypt(body.get("encryptedFeatures").getAsString())));
+        assertEquals(plain.getEtag(), encrypted.getEtag());
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+}
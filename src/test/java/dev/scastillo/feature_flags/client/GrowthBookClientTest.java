@@ -0,0 +1,259 @@
+package dev.scastillo.feature_flags.client;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.scheduler.RefreshCoordinator;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.snapshot.SharedSnapshot;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GrowthBookClientTest {
+
+    private static final long STUB_DELAY_MS = 100;
+    private static final String FEATURES =
+            "{\"dark-mode\":{\"defaultValue\":false,\"rules\":[{\"condition\":{\"country\":\"CO\"},\"force\":true}]}}";
+
+    /**
+     * What the stub serves unless a test changes it: the client's features plus one more
+     */
+    private static final String UPDATED_FEATURES =
+            "{\"dark-mode\":{\"defaultValue\":false,\"rules\":[{\"condition\":{\"country\":\"CO\"},\"force\":true}]},"
+                    + "\"banner\":{\"defaultValue\":true}}";
+
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer stub;
+    private volatile boolean useEtag = true;
+    private volatile String served = UPDATED_FEATURES;
+    private volatile String servedDateUpdated;
+    private final AtomicInteger stubHits = new AtomicInteger();
+    private GrowthBookClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/api/features/", exchange -> {
+            stubHits.incrementAndGet();
+            try {
+                Thread.sleep(STUB_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (useEtag && ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            String dateUpdated = servedDateUpdated != null ? ",\"dateUpdated\":\"" + servedDateUpdated + "\"" : "";
+            byte[] body = ("{\"status\":200,\"features\":" + served + dateUpdated + "}").getBytes(StandardCharsets.UTF_8);
+            if (useEtag) {
+                exchange.getResponseHeaders().add("ETag", ETAG);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stub.start();
+
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setApiHost("http://127.0.0.1:" + stub.getAddress().getPort());
+        properties.setClientKey("sdk-test");
+        client = newClient(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    @Test
+    void evaluateForUserReadsSnapshotWithoutNetwork() {
+        int iterations = 200;
+        long[] latencies = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            assertTrue(client.isFeatureEnabledForUser("dark-mode", Map.of("id", "u" + i, "country", "CO")));
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(latencies);
+        long p99Ms = latencies[(int) (iterations * 0.99) - 1] / 1_000_000;
+
+        assertEquals(0, stubHits.get(), "per-user evaluation must not call the GrowthBook API");
+        assertTrue(p99Ms < STUB_DELAY_MS, "p99 " + p99Ms + "ms should be below the upstream delay");
+    }
+
+    @Test
+    void refreshUpdatesSnapshotUsedByPerUserEvaluation() {
+        long before = client.currentSnapshot().getVersion();
+        client.refreshFeatures();
+
+        assertEquals(1, stubHits.get());
+        assertTrue(client.currentSnapshot().getVersion() > before);
+        assertTrue(client.isFeatureEnabledForUser("dark-mode", Map.of("country", "CO")));
+        assertTrue(client.isFeatureEnabledForUser("banner", Map.of()));
+    }
+
+    @Test
+    void refreshKeepsSnapshotWhenFeaturesAreAlreadyCurrent() {
+        // e.g. a webhook already pushed what the API now returns
+        served = FEATURES;
+        long before = client.currentSnapshot().getVersion();
+        client.refreshFeatures();
+
+        var stats = client.getRefreshStats().toResponse();
+        assertEquals(0, stats.getApplied());
+        assertEquals(1, stats.getUnchanged());
+        assertEquals(before, client.currentSnapshot().getVersion());
+        assertEquals(ETAG, client.currentSnapshot().getEtag());
+    }
+
+    @Test
+    void refreshSendsIfNoneMatchAndSkipsOnNotModified() {
+        client.refreshFeatures();
+        client.refreshFeatures();
+
+        var stats = client.getRefreshStats().toResponse();
+        assertEquals(2, stubHits.get());
+        assertEquals(1, stats.getApplied());
+        assertEquals(1, stats.getNotModified());
+        assertEquals(ETAG, client.currentSnapshot().getEtag());
+    }
+
+    @Test
+    void refreshSkipsReparseWhenPayloadHashIsUnchanged() {
+        useEtag = false;
+        client.refreshFeatures();
+        var applied = client.currentSnapshot();
+        client.refreshFeatures();
+
+        var stats = client.getRefreshStats().toResponse();
+        assertEquals(1, stats.getApplied());
+        assertEquals(1, stats.getUnchanged());
+        assertEquals(applied.getVersion(), client.currentSnapshot().getVersion());
+    }
+
+    @Test
+    void refreshBurstIsMergedIntoOneFetch() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.getRefresh().setDebounceMs(50);
+        RefreshCoordinator coordinator = new RefreshCoordinator(client, properties,
+                new SharedSnapshot(properties, new FeatureSnapshotHolder("{}", properties)));
+        try {
+            List<CompletableFuture<Void>> burst = IntStream.range(0, 20)
+                    .mapToObj(i -> coordinator.requestRefresh("webhook"))
+                    .toList();
+            CompletableFuture.allOf(burst.toArray(CompletableFuture[]::new)).join();
+
+            assertEquals(1, stubHits.get());
+            assertEquals(20, coordinator.getTriggerCount());
+            assertEquals(19, coordinator.getMergedCount());
+            assertEquals(1, coordinator.getExecutedCount());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    void shutdownFailsRefreshesThatHadNotStarted() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.getRefresh().setDebounceMs(60_000);
+        RefreshCoordinator coordinator = new RefreshCoordinator(client, properties,
+                new SharedSnapshot(properties, new FeatureSnapshotHolder("{}", properties)));
+        CompletableFuture<Void> refresh = coordinator.requestRefresh("manual");
+
+        coordinator.shutdown();
+
+        CompletionException failure = assertThrows(CompletionException.class, refresh::join);
+        assertInstanceOf(FeatureFlagException.class, failure.getCause());
+        assertEquals(0, stubHits.get());
+    }
+
+    @Test
+    void webhookPayloadIsAppliedWithoutFetching() {
+        long before = client.currentSnapshot().getVersion();
+
+        assertTrue(client.applyWebhookPayload(
+                "{\"features\":{\"dark-mode\":{\"defaultValue\":true}}}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(client.applyWebhookPayload("{\"event\":\"ping\"}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(0, stubHits.get());
+        assertTrue(client.currentSnapshot().getVersion() > before);
+        assertTrue(client.isFeatureEnabledForUser("dark-mode", Map.of("country", "US")));
+        assertEquals(1, client.getRefreshStats().toResponse().getWebhookApplied());
+    }
+
+    @Test
+    void olderPayloadsDoNotReplaceNewerWebhookFeatures() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.getRefresh().setDebounceMs(0);
+        RefreshCoordinator coordinator = new RefreshCoordinator(client, properties,
+                new SharedSnapshot(properties, new FeatureSnapshotHolder("{}", properties)));
+        try {
+            String pushed = "{\"dark-mode\":{\"defaultValue\":true}}";
+            assertTrue(coordinator.applyWebhookPayload(("{\"features\":" + pushed
+                    + ",\"dateUpdated\":\"2024-06-01T10:00:00.000Z\"}").getBytes(StandardCharsets.UTF_8)).join());
+            long version = client.currentSnapshot().getVersion();
+
+            servedDateUpdated = "2024-06-01T09:00:00.000Z";
+            coordinator.requestRefresh("scheduler").join();
+            assertTrue(coordinator.applyWebhookPayload(("{\"features\":{}"
+                    + ",\"dateUpdated\":\"2024-05-01T00:00:00.000Z\"}").getBytes(StandardCharsets.UTF_8)).join());
+
+            assertEquals(1, stubHits.get());
+            assertEquals(version, client.currentSnapshot().getVersion());
+            assertEquals(pushed, client.currentSnapshot().getFeaturesJson());
+
+            servedDateUpdated = "2024-06-02T00:00:00.000Z";
+            coordinator.requestRefresh("scheduler").join();
+            assertEquals(UPDATED_FEATURES, client.currentSnapshot().getFeaturesJson());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+
+    @Test
+    void compiledEngineMatchesSdkForPerUserEvaluation() {
+        GrowthBookProperties compiledProperties = new GrowthBookProperties();
+        compiledProperties.setEngine(GrowthBookProperties.Engine.COMPILED);
+        GrowthBookClient compiled = newClient(compiledProperties);
+
+        for (String country : new String[]{"CO", "US", "MX"}) {
+            Map<String, Object> attributes = Map.of("id", "u-" + country, "country", country);
+            assertEquals(client.isFeatureEnabledForUser("dark-mode", attributes),
+                    compiled.isFeatureEnabledForUser("dark-mode", attributes));
+            assertEquals(client.getFeatureValueForUser("dark-mode", false, Boolean.class, attributes),
+                    compiled.getFeatureValueForUser("dark-mode", false, Boolean.class, attributes));
+        }
+    }
+
+    private static GrowthBookClient newClient(GrowthBookProperties properties) {
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder(FEATURES, properties);
+        return new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder,
+                new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { }));
+    }
+}
@@ -0,0 +1,95 @@
+package dev.scastillo.feature_flags.client;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Request handlers that block on a slow GrowthBook API, one virtual thread per request: they all
+ * wait on the upstream at the same time instead of queueing behind a bounded pool (Tomcat's default
+ * is 200 threads; {@link #PLATFORM_POOL_SIZE} stands in for it).
+ */
+class VirtualThreadLoadTest {
+
+    private static final long UPSTREAM_DELAY_MS = 2_000;
+    private static final int PLATFORM_POOL_SIZE = 50;
+    private static final int REQUESTS = 200;
+    private static final String FEATURES = "{\"dark-mode\":{\"defaultValue\":true}}";
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger served = new AtomicInteger();
+    private HttpServer stub;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), REQUESTS);
+        stub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        stub.createContext("/api/features/", exchange -> {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(UPSTREAM_DELAY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            byte[] body = ("{\"status\":200,\"features\":" + FEATURES + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+            served.incrementAndGet();
+        });
+        stub.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    @Test
+    void concurrentRequestsWaitOnSlowUpstreamTogether() throws Exception {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setApiHost("http://127.0.0.1:" + stub.getAddress().getPort());
+        properties.setClientKey("sdk-test");
+        properties.setVirtualThreads(true);
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder("{}", properties);
+        GrowthBookClient client = new GrowthBookClient(properties,
+                HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build(), snapshotHolder,
+                new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { }));
+
+        ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < REQUESTS; i++) {
+            handlers.execute(client::refreshFeatures);
+        }
+        handlers.shutdown();
+
+        // A pool of PLATFORM_POOL_SIZE would need REQUESTS / PLATFORM_POOL_SIZE upstream round trips
+        long bound = UPSTREAM_DELAY_MS * REQUESTS / PLATFORM_POOL_SIZE;
+        assertTrue(handlers.awaitTermination(bound, TimeUnit.MILLISECONDS),
+                REQUESTS + " slow requests should complete within " + bound + " ms");
+        assertEquals(REQUESTS, served.get());
+        assertTrue(peakInFlight.get() > PLATFORM_POOL_SIZE,
+                "requests waiting on the upstream at once: " + peakInFlight.get());
+        assertEquals(FEATURES, snapshotHolder.current().getFeaturesJson());
+    }
+}
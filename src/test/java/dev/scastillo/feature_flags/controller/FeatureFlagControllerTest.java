@@ -0,0 +1,62 @@
+package dev.scastillo.feature_flags.controller;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureFlagControllerTest {
+
+    @Test
+    void etagChangesWithContentKeyAndVariant() {
+        String etag = FeatureFlagController.etag("c0ffee", "dark-mode", "feature");
+
+        assertEquals(etag, FeatureFlagController.etag("c0ffee", "dark-mode", "feature"));
+        assertNotEquals(etag, FeatureFlagController.etag("beef", "dark-mode", "feature"));
+        assertNotEquals(etag, FeatureFlagController.etag("c0ffee", "banner", "feature"));
+        assertNotEquals(etag, FeatureFlagController.etag("c0ffee", "dark-mode", "boolean:false"));
+        assertTrue(etag.startsWith("W/\"c0ffee-") && etag.endsWith("\""));
+    }
+
+    @Test
+    void etagIsTheSameForTheSameFeaturesAcrossHoldersAndDiffersWhenTheyChange() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        String features = "{\"dark-mode\":{\"defaultValue\":true}}";
+        FeatureSnapshot replica = new FeatureSnapshotHolder(features, properties).current();
+        FeatureSnapshot restarted = new FeatureSnapshotHolder(features, properties).current();
+        FeatureSnapshot changed = new FeatureSnapshotHolder("{\"dark-mode\":{\"defaultValue\":false}}", properties).current();
+
+        assertNotEquals(replica.getVersion(), restarted.getVersion());
+        assertEquals(FeatureFlagController.etag(replica.getContentHash(), "dark-mode", "feature"),
+                FeatureFlagController.etag(restarted.getContentHash(), "dark-mode", "feature"));
+        assertNotEquals(FeatureFlagController.etag(replica.getContentHash(), "dark-mode", "feature"),
+                FeatureFlagController.etag(changed.getContentHash(), "dark-mode", "feature"));
+    }
+
+    @Test
+    void ifNoneMatchAcceptsListsWeakTagsAndWildcard() {
+        String etag = FeatureFlagController.etag("c0ffee", "dark-mode", "feature");
+
+        assertTrue(FeatureFlagController.etagMatches(etag, etag));
+        assertTrue(FeatureFlagController.etagMatches("\"beef-1\", " + etag, etag));
+        assertTrue(FeatureFlagController.etagMatches(etag.substring(2), etag));
+        assertTrue(FeatureFlagController.etagMatches("*", etag));
+        assertFalse(FeatureFlagController.etagMatches(FeatureFlagController.etag("beef", "dark-mode", "feature"), etag));
+        assertFalse(FeatureFlagController.etagMatches(null, etag));
+    }
+
+    @Test
+    void gzipIsUsedOnlyWhenAccepted() {
+        assertTrue(FeatureFlagController.acceptsGzip("gzip, deflate, br"));
+        assertTrue(FeatureFlagController.acceptsGzip("br;q=1.0, gzip;q=0.8"));
+        assertTrue(FeatureFlagController.acceptsGzip("*"));
+        assertFalse(FeatureFlagController.acceptsGzip("gzip;q=0"));
+        assertFalse(FeatureFlagController.acceptsGzip("identity"));
+        assertFalse(FeatureFlagController.acceptsGzip(null));
+    }
+}
@@ -0,0 +1,325 @@
+package dev.scastillo.feature_flags.engine;
+
+import com.google.gson.Gson;
+import growthbook.sdk.java.GBContext;
+import growthbook.sdk.java.GrowthBook;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Conformance cases for the compiled engine, written by hand after the behaviour of GrowthBook's
+ * SDKs (hash, getBucketRanges, evalCondition, feature); not an import of the spec's cases.json.
+ */
+class CompiledFeaturesTest {
+
+    private static final Gson GSON = new Gson();
+
+    @Test
+    void hash() {
+        Object[][] cases = {
+                {"", "a", 1, 0.22},
+                {"", "b", 1, 0.077},
+                {"b", "a", 1, 0.946},
+                {"ef", "d", 1, 0.652},
+                {"", "123", 1, 0.011},
+                {"", "a", 2, 0.0216},
+                {"", "b", 2, 0.9054},
+                {"b", "a", 2, 0.665},
+                {"ef", "d", 2, 0.8601},
+                {"", "a", 99, -1.0},
+        };
+        for (Object[] c : cases) {
+            double actual = new HashSeed((String) c[0], (Integer) c[2]).hash((String) c[1]);
+            assertEquals((Double) c[3], actual, 1e-9, "hash(" + c[0] + ", " + c[1] + ", v" + c[2] + ")");
+        }
+    }
+
+    @Test
+    void bucketRanges() {
+        assertRanges(new double[][]{{0, 0.5}, {0.5, 1}}, ExperimentRule.bucketRanges(2, 1, null));
+        assertRanges(new double[][]{{0, 0.25}, {0.5, 0.75}}, ExperimentRule.bucketRanges(2, 0.5, null));
+        assertRanges(new double[][]{{0, 0.4}, {0.4, 1}}, ExperimentRule.bucketRanges(2, 1, list("[0.4, 0.6]")));
+        assertRanges(new double[][]{{0, 0.5}, {0.5, 1}}, ExperimentRule.bucketRanges(2, 1, list("[0.7, 0.6]")));
+        assertRanges(new double[][]{{0, 0.5}, {0.5, 1}}, ExperimentRule.bucketRanges(2, 1, list("[0.4, 0.1, 0.5]")));
+        assertRanges(new double[][]{{0, 0.5}, {0.5, 1}}, ExperimentRule.bucketRanges(2, 1.5, null));
+        assertRanges(new double[][]{{0, 0}, {0.5, 0.5}}, ExperimentRule.bucketRanges(2, -0.2, null));
+    }
+
+    @Test
+    void evalCondition() {
+        Object[][] cases = {
+                {"{\"country\": \"CO\"}", "{\"country\": \"CO\"}", true},
+                {"{\"country\": \"CO\"}", "{\"country\": \"US\"}", false},
+                {"{\"country\": \"CO\"}", "{}", false},
+                {"{\"$or\": [{\"a\": 1}, {\"b\": 2}]}", "{\"b\": 2}", true},
+                {"{\"$or\": [{\"a\": 1}, {\"b\": 2}]}", "{\"b\": 3}", false},
+                {"{\"$or\": []}", "{}", true},
+                {"{\"$nor\": [{\"a\": 1}, {\"b\": 2}]}", "{\"b\": 3}", true},
+                {"{\"$and\": [{\"a\": 1}, {\"b\": 2}]}", "{\"a\": 1, \"b\": 2}", true},
+                {"{\"$and\": [{\"a\": 1}, {\"b\": 2}]}", "{\"a\": 1}", false},
+                {"{\"$not\": {\"a\": 1}}", "{\"a\": 2}", true},
+                {"{\"name.first\": \"Ada\"}", "{\"name\": {\"first\": \"Ada\"}}", true},
+                {"{\"name.first\": \"Ada\"}", "{\"name\": \"Ada\"}", false},
+                {"{\"age\": {\"$gt\": 18, \"$lte\": 65}}", "{\"age\": 30}", true},
+                {"{\"age\": {\"$gt\": 18, \"$lte\": 65}}", "{\"age\": 18}", false},
+                {"{\"age\": {\"$lt\": 10}}", "{}", false},
+                {"{\"age\": {\"$gte\": 10}}", "{\"age\": \"12\"}", true},
+                {"{\"word\": {\"$lt\": \"dog\"}}", "{\"word\": \"cat\"}", true},
+                {"{\"id\": {\"$eq\": 5}}", "{\"id\": 5.0}", true},
+                {"{\"id\": {\"$ne\": 5}}", "{\"id\": \"5\"}", true},
+                {"{\"email\": {\"$regex\": \"@example\\\\.com$\"}}", "{\"email\": \"a@example.com\"}", true},
+                {"{\"email\": {\"$regex\": \"(\"}}", "{\"email\": \"(\"}", false},
+                {"{\"country\": {\"$in\": [\"CO\", \"MX\"]}}", "{\"country\": \"MX\"}", true},
+                {"{\"country\": {\"$in\": [\"CO\", \"MX\"]}}", "{\"country\": \"US\"}", false},
+                {"{\"country\": {\"$in\": \"CO\"}}", "{\"country\": \"CO\"}", false},
+                {"{\"tags\": {\"$in\": [\"a\", \"b\"]}}", "{\"tags\": [\"c\", \"b\"]}", true},
+                {"{\"country\": {\"$nin\": [\"CO\", \"MX\"]}}", "{\"country\": \"US\"}", true},
+                {"{\"country\": {\"$nin\": [\"CO\", \"MX\"]}}", "{\"country\": \"CO\"}", false},
+                {"{\"id\": {\"$in\": [1, 2, 3]}}", "{\"id\": 2}", true},
+                {"{\"beta\": {\"$exists\": true}}", "{\"beta\": false}", true},
+                {"{\"beta\": {\"$exists\": false}}", "{}", true},
+                {"{\"beta\": {\"$exists\": true}}", "{\"beta\": null}", false},
+                {"{\"a\": {\"$type\": \"string\"}}", "{\"a\": \"x\"}", true},
+                {"{\"a\": {\"$type\": \"number\"}}", "{\"a\": 1}", true},
+                {"{\"a\": {\"$type\": \"array\"}}", "{\"a\": [1]}", true},
+                {"{\"a\": {\"$type\": \"null\"}}", "{}", true},
+                {"{\"a\": {\"$not\": {\"$gt\": 5}}}", "{\"a\": 3}", true},
+                {"{\"tags\": {\"$size\": 2}}", "{\"tags\": [1, 2]}", true},
+                {"{\"tags\": {\"$size\": {\"$gt\": 2}}}", "{\"tags\": [1, 2]}", false},
+                {"{\"nums\": {\"$elemMatch\": {\"$gt\": 10}}}", "{\"nums\": [1, 20]}", true},
+                {"{\"items\": {\"$elemMatch\": {\"sku\": \"x\"}}}", "{\"items\": [{\"sku\": \"y\"}, {\"sku\": \"x\"}]}", true},
+                {"{\"items\": {\"$elemMatch\": {\"sku\": \"z\"}}}", "{\"items\": [{\"sku\": \"y\"}]}", false},
+                {"{\"tags\": {\"$all\": [\"a\", \"b\"]}}", "{\"tags\": [\"b\", \"c\", \"a\"]}", true},
+                {"{\"tags\": {\"$all\": [\"a\", \"b\"]}}", "{\"tags\": [\"b\"]}", false},
+                {"{\"tags\": [\"a\", \"b\"]}", "{\"tags\": [\"a\", \"b\"]}", true},
+                {"{\"meta\": {\"plan\": \"pro\"}}", "{\"meta\": {\"plan\": \"pro\"}}", true},
+                {"{\"version\": {\"$vgt\": \"1.9.0\"}}", "{\"version\": \"1.10.0\"}", true},
+                {"{\"version\": {\"$vlt\": \"1.0.0\"}}", "{\"version\": \"1.0.0-beta\"}", true},
+                {"{\"version\": {\"$veq\": \"v1.2.3\"}}", "{\"version\": \"1.2.3+build5\"}", true},
+                {"{\"a\": {\"$unknown\": 1}}", "{\"a\": 1}", false},
+                {"{\"id\": {\"$inGroup\": \"missing\"}}", "{\"id\": \"1\"}", false},
+                {"{\"id\": {\"$notInGroup\": \"missing\"}}", "{\"id\": \"1\"}", true},
+        };
+        for (Object[] c : cases) {
+            Condition condition = ConditionCompiler.compile(JsValues.toJava(GSON.fromJson((String) c[0], com.google.gson.JsonElement.class)));
+            assertEquals(c[2], condition.test(attributes((String) c[1])), c[0] + " with " + c[1]);
+        }
+    }
+
+    /**
+     * evalConditionValue coercion: a string condition compares String(value), a number condition
+     * value * 1, a boolean condition !!value (null never matches). Operators stay strict.
+     * Every case is also run through the SDK, which the compiled engine must agree with.
+     */
+    @Test
+    void conditionValueCoercionAgreesWithTheSdk() {
+        Object[][] cases = {
+                {"{\"id\": \"123\"}", "{\"id\": 123}", true},
+                {"{\"id\": \"123\"}", "{\"id\": 123.5}", false},
+                {"{\"id\": \"123\"}", "{\"id\": \"0123\"}", false},
+                {"{\"id\": 123}", "{\"id\": \"123\"}", true},
+                {"{\"id\": 123}", "{\"id\": \" 123 \"}", true},
+                {"{\"id\": 123}", "{\"id\": \"123abc\"}", false},
+                {"{\"price\": 1.5}", "{\"price\": \"1.5\"}", true},
+                {"{\"count\": 1}", "{\"count\": true}", true},
+                {"{\"count\": 0}", "{\"count\": false}", true},
+                {"{\"flag\": \"true\"}", "{\"flag\": true}", true},
+                {"{\"premium\": true}", "{\"premium\": 1}", true},
+                {"{\"premium\": true}", "{\"premium\": \"yes\"}", true},
+                {"{\"premium\": true}", "{\"premium\": 0}", false},
+                {"{\"premium\": true}", "{}", false},
+                {"{\"premium\": false}", "{\"premium\": 0}", true},
+                {"{\"premium\": false}", "{\"premium\": \"\"}", true},
+                {"{\"premium\": false}", "{\"premium\": null}", false},
+                {"{\"tags\": [\"a\", \"b\"]}", "{\"tags\": [\"a\", \"b\"]}", true},
+                {"{\"tags\": [\"a\", \"b\"]}", "{\"tags\": \"a,b\"}", false},
+                {"{\"ids\": [1, 2]}", "{\"ids\": [\"1\", \"2\"]}", false},
+                {"{\"id\": {\"$eq\": \"123\"}}", "{\"id\": 123}", false},
+                {"{\"id\": {\"$in\": [\"123\"]}}", "{\"id\": 123}", false},
+        };
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < cases.length; i++) {
+            json.append(i > 0 ? "," : "").append("\"case-").append(i)
+                    .append("\": {\"defaultValue\": false, \"rules\": [{\"condition\": ").append(cases[i][0])
+                    .append(", \"force\": true}]}");
+        }
+        String featuresJson = json.append('}').toString();
+        CompiledFeatures compiled = CompiledFeatures.compile(featuresJson, true);
+
+        for (int i = 0; i < cases.length; i++) {
+            String description = cases[i][0] + " with " + cases[i][1];
+            boolean expected = (Boolean) cases[i][2];
+            boolean sdk = new GrowthBook(GBContext.builder()
+                    .featuresJson(featuresJson)
+                    .attributesJson((String) cases[i][1])
+                    .build()).isOn("case-" + i);
+
+            assertEquals(expected, compiled.evaluate("case-" + i, attributes((String) cases[i][1])).isOn(), description);
+            assertEquals(expected, sdk, "SDK: " + description);
+        }
+    }
+
+    @Test
+    void unknownAndDefaultValues() {
+        CompiledFeatures features = CompiledFeatures.compile(
+                "{\"banner\": {\"defaultValue\": \"blue\"}, \"empty\": {}, \"zero\": {\"defaultValue\": 0}}", true);
+
+        EvaluationResult unknown = features.evaluate("missing", Map.of());
+        assertEquals(EvaluationSource.UNKNOWN_FEATURE, unknown.getSource());
+        assertNull(unknown.getValue());
+        assertTrue(unknown.isOff());
+
+        EvaluationResult banner = features.evaluate("banner", Map.of());
+        assertEquals("blue", banner.getValue());
+        assertTrue(banner.isOn());
+        assertEquals(EvaluationSource.DEFAULT_VALUE, banner.getSource());
+
+        assertNull(features.evaluate("empty", Map.of()).getValue());
+        assertFalse(features.evaluate("zero", Map.of()).isOn());
+    }
+
+    @Test
+    void forceRulesAndRollouts() {
+        CompiledFeatures features = CompiledFeatures.compile("{"
+                + "\"dark-mode\": {\"defaultValue\": false, \"rules\": ["
+                + "  {\"id\": \"r1\", \"condition\": {\"country\": \"CO\"}, \"force\": true}]},"
+                + "\"rollout\": {\"defaultValue\": false, \"rules\": ["
+                + "  {\"force\": true, \"coverage\": 0.5}]},"
+                + "\"by-company\": {\"defaultValue\": false, \"rules\": ["
+                + "  {\"force\": true, \"coverage\": 0.5, \"hashAttribute\": \"company\", \"seed\": \"rollout\"}]},"
+                + "\"none\": {\"defaultValue\": false, \"rules\": ["
+                + "  {\"force\": true, \"coverage\": 0}]}"
+                + "}", true);
+
+        EvaluationResult forced = features.evaluate("dark-mode", attributes("{\"country\": \"CO\"}"));
+        assertEquals(true, forced.getValue());
+        assertEquals(EvaluationSource.FORCE, forced.getSource());
+        assertEquals("r1", forced.getRuleId());
+        assertEquals(EvaluationSource.DEFAULT_VALUE, features.evaluate("dark-mode", attributes("{\"country\": \"US\"}")).getSource());
+
+        // hash("rollout", "1", 1) = 0.377, hash("rollout", "3", 1) = 0.655
+        assertEquals(EvaluationSource.FORCE, features.evaluate("rollout", attributes("{\"id\": \"1\"}")).getSource());
+        assertEquals(EvaluationSource.DEFAULT_VALUE, features.evaluate("rollout", attributes("{\"id\": \"3\"}")).getSource());
+        assertEquals(EvaluationSource.DEFAULT_VALUE, features.evaluate("rollout", Map.of()).getSource());
+        assertEquals(EvaluationSource.FORCE, features.evaluate("by-company", attributes("{\"company\": 1}")).getSource());
+        // hash("none", "991", 1) = 0: coverage 0 still excludes it
+        assertEquals(EvaluationSource.DEFAULT_VALUE, features.evaluate("none", attributes("{\"id\": \"991\"}")).getSource());
+    }
+
+    @Test
+    void experiments() {
+        String experiment = "{\"key\": \"my-exp\", \"variations\": [\"control\", \"treatment\"]";
+        CompiledFeatures features = CompiledFeatures.compile("{"
+                + "\"exp\": {\"defaultValue\": \"default\", \"rules\": [" + experiment + "}]},"
+                + "\"half\": {\"defaultValue\": \"default\", \"rules\": [" + experiment + ", \"coverage\": 0.5}]},"
+                + "\"ns\": {\"defaultValue\": \"default\", \"rules\": [" + experiment + ", \"namespace\": [\"ns1\", 0, 0.5]}]},"
+                + "\"pass\": {\"defaultValue\": \"default\", \"rules\": [" + experiment
+                + ", \"meta\": [{\"passthrough\": true}, {}]}]}"
+                + "}", true);
+
+        // hash("my-exp", id, 1): "1" = 0.7, "2" = 0.869, "5" = 0.048, "8" = 0.095
+        EvaluationResult treatment = features.evaluate("exp", attributes("{\"id\": \"1\"}"));
+        assertEquals("treatment", treatment.getValue());
+        assertEquals(EvaluationSource.EXPERIMENT, treatment.getSource());
+        assertEquals("my-exp", treatment.getExperimentKey());
+        assertEquals(1, treatment.getVariationId());
+        assertEquals("control", features.evaluate("exp", attributes("{\"id\": \"5\"}")).getValue());
+        assertEquals("control", features.evaluate("exp", attributes("{\"id\": 5}")).getValue());
+        assertEquals("default", features.evaluate("exp", Map.of()).getValue());
+
+        assertEquals("treatment", features.evaluate("half", attributes("{\"id\": \"1\"}")).getValue());
+        assertEquals("default", features.evaluate("half", attributes("{\"id\": \"2\"}")).getValue());
+        assertEquals("control", features.evaluate("half", attributes("{\"id\": \"8\"}")).getValue());
+
+        // hash("__ns1", id, 1): "1" = 0.852 (outside), "2" = 0.399 (inside)
+        assertEquals("default", features.evaluate("ns", attributes("{\"id\": \"1\"}")).getValue());
+        assertEquals("treatment", features.evaluate("ns", attributes("{\"id\": \"2\"}")).getValue());
+
+        assertEquals("default", features.evaluate("pass", attributes("{\"id\": \"5\"}")).getValue());
+        assertEquals("treatment", features.evaluate("pass", attributes("{\"id\": \"1\"}")).getValue());
+
+        CompiledFeatures disabled = CompiledFeatures.compile("{\"exp\": {\"defaultValue\": \"default\", \"rules\": ["
+                + experiment + "}]}}", false);
+        assertEquals("default", disabled.evaluate("exp", attributes("{\"id\": \"1\"}")).getValue());
+    }
+
+    @Test
+    void evaluationReusesPrecomputedResults() {
+        CompiledFeatures features = CompiledFeatures.compile(
+                "{\"f\": {\"defaultValue\": 1, \"rules\": [{\"condition\": {\"a\": 1}, \"force\": 2}]}}", true);
+        Map<String, Object> attributes = Map.of("a", 1);
+
+        assertSame(features.evaluate("f", attributes), features.evaluate("f", attributes));
+        assertSame(features.evaluate("f", Map.of()), features.evaluate("f", Map.of("a", 3)));
+    }
+
+    @Test
+    void largeInAndNinListsAreIndexedWithStrictEquality() {
+        StringBuilder ids = new StringBuilder();
+        StringBuilder accounts = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            ids.append("\"user-").append(i * 2).append("\",");
+            accounts.append(i * 3).append(',');
+        }
+        CompiledFeatures features = CompiledFeatures.compile("{"
+                + "\"allow\": {\"defaultValue\": false, \"rules\": [{\"condition\": {\"id\": {\"$in\": ["
+                + ids + "true, null, 0]}}, \"force\": true}]},"
+                + "\"deny\": {\"defaultValue\": true, \"rules\": [{\"condition\": {\"account\": {\"$nin\": ["
+                + accounts + "null, -1]}}, \"force\": false}]},"
+                + "\"small\": {\"defaultValue\": false, \"rules\": [{\"condition\": {\"id\": {\"$in\": [\"a\", null]}}, \"force\": true}]}"
+                + "}", true);
+        Map<String, Object> nullId = new HashMap<>();
+        nullId.put("id", null);
+
+        assertTrue(features.evaluate("allow", attributes("{\"id\": \"user-199998\"}")).isOn());
+        assertFalse(features.evaluate("allow", attributes("{\"id\": \"user-3\"}")).isOn());
+        assertTrue(features.evaluate("allow", attributes("{\"id\": [\"x\", \"user-4\"]}")).isOn());
+        assertTrue(features.evaluate("allow", attributes("{\"id\": true}")).isOn());
+        assertFalse(features.evaluate("allow", attributes("{\"id\": false}")).isOn());
+        // GrowthBook's getPath returns null for a missing attribute, so it is in any list with null
+        assertTrue(features.evaluate("allow", Map.of()).isOn());
+        assertTrue(features.evaluate("allow", nullId).isOn());
+        assertTrue(features.evaluate("small", Map.of()).isOn());
+        assertTrue(features.evaluate("small", nullId).isOn());
+        assertTrue(features.evaluate("allow", attributes("{\"id\": -0.0}")).isOn());
+        assertFalse(features.evaluate("allow", attributes("{\"id\": \"0\"}")).isOn());
+
+        assertTrue(features.evaluate("deny", attributes("{\"account\": 299997}")).isOn());
+        assertTrue(features.evaluate("deny", attributes("{\"account\": -1.0}")).isOn());
+        assertFalse(features.evaluate("deny", attributes("{\"account\": 1}")).isOn());
+        assertFalse(features.evaluate("deny", attributes("{\"account\": \"3\"}")).isOn());
+        assertTrue(features.evaluate("deny", Map.of()).isOn());
+
+        Map<String, Long> indexBytes = features.indexBytesByFeature();
+        assertEquals(Set.of("allow", "deny"), indexBytes.keySet());
+        assertTrue(indexBytes.get("deny") > 8L * 100_000);
+        assertTrue(indexBytes.get("allow") > indexBytes.get("deny"));
+        assertEquals(indexBytes.get("allow") + indexBytes.get("deny"), features.indexBytes());
+    }
+
+    private static void assertRanges(double[][] expected, double[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i], 1e-9);
+        }
+    }
+
+    private static Object list(String json) {
+        return JsValues.toJava(GSON.fromJson(json, com.google.gson.JsonElement.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> attributes(String json) {
+        return GSON.fromJson(json, Map.class);
+    }
+}
@@ -0,0 +1,32 @@
+package dev.scastillo.feature_flags.metrics;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FeatureFlagMetricsTest {
+
+    private static final String FEATURES =
+            "{\"a\":{\"defaultValue\":true},\"b\":{\"defaultValue\":true},\"c\":{\"defaultValue\":true}}";
+
+    @Test
+    void featureTagsStayBounded() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.getMetrics().setMaxFeatureTags(2);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        FeatureFlagMetrics metrics = new FeatureFlagMetrics(registry,
+                new FeatureSnapshotHolder(FEATURES, properties), properties);
+
+        for (String key : new String[]{"a", "b", "c", "random-1", "random-2"}) {
+            metrics.recordEvaluation("feature", key, 1_000);
+        }
+
+        assertEquals(1, registry.get("feature_flags.evaluation").tag("feature", "a").timer().count());
+        assertEquals(1, registry.get("feature_flags.evaluation").tag("feature", "other").timer().count());
+        assertEquals(2, registry.get("feature_flags.evaluation").tag("feature", "unknown").timer().count());
+        assertEquals(4, registry.get("feature_flags.evaluation").timers().size());
+    }
+}
@@ -0,0 +1,55 @@
+package dev.scastillo.feature_flags.scheduler;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RefreshScheduleTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+
+    @Test
+    void intervalIsJitteredAroundTtl() {
+        assertEquals(Duration.ofSeconds(48), schedule(0.0).nextDelay(0, null, null, NOW));
+        assertEquals(Duration.ofSeconds(60), schedule(0.5).nextDelay(0, null, null, NOW));
+        assertEquals(Duration.ofSeconds(72), schedule(1.0).nextDelay(0, null, null, NOW));
+        assertEquals(Duration.ofSeconds(30), schedule(0.5).initialDelay());
+    }
+
+    @Test
+    void failuresBackOffExponentiallyUpToTheCap() {
+        RefreshSchedule schedule = schedule(1.0);
+        assertEquals(Duration.ofSeconds(120), schedule.nextDelay(1, null, null, NOW));
+        assertEquals(Duration.ofSeconds(240), schedule.nextDelay(2, null, null, NOW));
+        assertEquals(Duration.ofSeconds(480), schedule.nextDelay(3, null, null, NOW));
+        assertEquals(Duration.ofSeconds(900), schedule.nextDelay(4, null, null, NOW));
+        assertEquals(Duration.ofSeconds(900), schedule.nextDelay(50, null, null, NOW));
+        // Never less than half the backoff, whatever the random draw
+        assertEquals(Duration.ofSeconds(60), schedule(0.0).nextDelay(1, null, null, NOW));
+    }
+
+    @Test
+    void webhooksSpeedUpThenSlowDownPolling() {
+        RefreshSchedule schedule = schedule(0.5);
+        Instant justNow = NOW.minusSeconds(10);
+        Instant aWhileAgo = NOW.minusSeconds(600);
+        Instant longAgo = NOW.minusSeconds(7_200);
+
+        assertEquals(Duration.ofSeconds(5), schedule.nextDelay(0, justNow, justNow, NOW));
+        assertEquals(Duration.ofSeconds(240), schedule.nextDelay(0, null, justNow, NOW));
+        assertEquals(Duration.ofSeconds(240), schedule.nextDelay(0, aWhileAgo, aWhileAgo, NOW));
+        assertEquals(Duration.ofSeconds(60), schedule.nextDelay(0, longAgo, longAgo, NOW));
+        // Failures win over the webhook state
+        assertEquals(Duration.ofSeconds(90), schedule.nextDelay(1, justNow, justNow, NOW));
+    }
+
+    private static RefreshSchedule schedule(double random) {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.getCache().setTtlSeconds(60);
+        return new RefreshSchedule(properties, () -> random);
+    }
+}
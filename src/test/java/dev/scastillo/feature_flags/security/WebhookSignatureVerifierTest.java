@@ -0,0 +1,50 @@
+package dev.scastillo.feature_flags.security;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebhookSignatureVerifierTest {
+
+    private static final String SECRET = "whsec-test";
+    private static final byte[] PAYLOAD = "{\"features\":{}}".getBytes(StandardCharsets.UTF_8);
+
+    private final WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(SECRET);
+
+    @Test
+    void acceptsValidSignature() throws Exception {
+        String signature = sign(PAYLOAD);
+
+        assertTrue(verifier.verify(signature, PAYLOAD));
+        assertTrue(verifier.verify("sha256=" + signature, PAYLOAD));
+    }
+
+    @Test
+    void rejectsTamperedMissingOrMalformedSignature() throws Exception {
+        byte[] tampered = "{\"features\":{\"x\":{}}}".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(verifier.verify(sign(PAYLOAD), tampered));
+        assertFalse(verifier.verify(null, PAYLOAD));
+        assertFalse(verifier.verify("not-hex", PAYLOAD));
+    }
+
+    @Test
+    void acceptsEverythingWithoutSecret() {
+        WebhookSignatureVerifier disabled = new WebhookSignatureVerifier("");
+
+        assertFalse(disabled.isEnabled());
+        assertTrue(disabled.verify(null, PAYLOAD));
+    }
+
+    private static String sign(byte[] payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return HexFormat.of().formatHex(mac.doFinal(payload));
+    }
+}
@@ -0,0 +1,259 @@
+package dev.scastillo.feature_flags.service;
+
+import dev.scastillo.feature_flags.cache.BootstrapPayloadCache;
+import dev.scastillo.feature_flags.cache.EvaluationCache;
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.dto.request.FeatureEvaluationRequest;
+import dev.scastillo.feature_flags.dto.response.BulkEvaluationResult;
+import dev.scastillo.feature_flags.dto.response.FeatureSimulation;
+import dev.scastillo.feature_flags.dto.response.SimulationResponse;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.scheduler.RefreshCoordinator;
+import dev.scastillo.feature_flags.snapshot.FeaturePayloadLoader;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.snapshot.SharedSnapshot;
+import dev.scastillo.feature_flags.tenant.TenantRegistry;
+import dev.scastillo.feature_flags.tracking.ExposureEvent;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureFlagServiceTest {
+
+    private static final String FEATURES = "{"
+            + "\"dark-mode\":{\"defaultValue\":false,\"rules\":[{\"condition\":{\"country\":\"CO\"},\"force\":true}]},"
+            + "\"new-checkout\":{\"defaultValue\":false,\"rules\":[{\"force\":true,\"coverage\":0.5,\"hashAttribute\":\"id\"}]},"
+            + "\"banner\":{\"defaultValue\":true}"
+            + "}";
+
+    private FeatureSnapshotHolder snapshotHolder;
+    private GrowthBookClient client;
+    private FeatureFlagService service;
+
+    @BeforeEach
+    void setUp() {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        snapshotHolder = new FeatureSnapshotHolder(FEATURES, properties);
+        FeatureFlagMetrics metrics = new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties);
+        ExposureTracker exposureTracker = new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { });
+        client = new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder, metrics, exposureTracker);
+        service = new FeatureFlagService(client, new EvaluationCache(properties, snapshotHolder),
+                new RefreshCoordinator(client, properties, new SharedSnapshot(properties, snapshotHolder)), metrics,
+                new TenantRegistry(properties, HttpClient.newHttpClient(), metrics, exposureTracker),
+                new BootstrapPayloadCache(properties));
+    }
+
+    @Test
+    void evaluateBulkReturnsOneResultPerUser() {
+        int users = 500;
+        List<String> keys = List.of("dark-mode", "new-checkout", "banner");
+        var results = new ConcurrentLinkedQueue<BulkEvaluationResult>();
+
+        long evaluated = service.evaluateBulk(
+                IntStream.range(0, users)
+                        .mapToObj(i -> FeatureEvaluationRequest.builder()
+                                .userId("user-" + i)
+                                .country(i % 2 == 0 ? "CO" : "US")
+                                .build())
+                        .iterator(),
+                keys,
+                results::add);
+
+        assertEquals(users, evaluated);
+        assertEquals(users, results.size());
+        results.forEach(result -> {
+            assertNull(result.getError());
+            assertEquals(keys.size(), result.getFeatures().size());
+        });
+        Map<String, Boolean> first = results.stream()
+                .filter(r -> r.getUserId().equals("user-0"))
+                .findFirst().orElseThrow().getFeatures();
+        assertEquals(Boolean.TRUE, first.get("dark-mode"));
+        assertEquals(Boolean.TRUE, first.get("banner"));
+        assertEquals(Boolean.FALSE, results.stream()
+                .filter(r -> r.getUserId().equals("user-1"))
+                .findFirst().orElseThrow().getFeatures().get("dark-mode"));
+    }
+
+    @Test
+    void evaluateBulkReportsUnreadableRequestsAndStopsOnSinkFailure() {
+        Iterator<FeatureEvaluationRequest> withBadLine = new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < 3;
+            }
+
+            @Override
+            public FeatureEvaluationRequest next() {
+                if (next++ == 1) {
+                    throw new FeatureFlagException("Invalid NDJSON evaluation request: bad line");
+                }
+                return FeatureEvaluationRequest.builder().userId("user-" + next).build();
+            }
+        };
+        var results = new ConcurrentLinkedQueue<BulkEvaluationResult>();
+
+        assertEquals(2, service.evaluateBulk(withBadLine, List.of("dark-mode"), results::add));
+        assertEquals(3, results.size());
+        assertEquals(1, results.stream().filter(r -> r.getUserId() == null && r.getError() != null).count());
+
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger requested = new AtomicInteger();
+        Iterator<FeatureEvaluationRequest> many = IntStream.range(0, 100_000)
+                .peek(i -> requested.incrementAndGet())
+                .mapToObj(i -> FeatureEvaluationRequest.builder().userId("user-" + i).build())
+                .iterator();
+        UncheckedIOException gone = new UncheckedIOException(new IOException("client went away"));
+
+        UncheckedIOException thrown = assertThrows(UncheckedIOException.class,
+                () -> service.evaluateBulk(many, List.of("dark-mode"), result -> {
+                    delivered.incrementAndGet();
+                    throw gone;
+                }));
+        assertSame(gone, thrown);
+        assertTrue(delivered.get() <= requested.get());
+        assertTrue(requested.get() < 100_000, "remaining users were still read after the sink failed");
+    }
+
+    @Test
+    void evaluateFeatureIsCachedPerAttributesAndInvalidatedOnNewSnapshot() {
+        FeatureEvaluationRequest request = FeatureEvaluationRequest.builder().userId("u1").country("CO").build();
+
+        service.evaluateFeature("dark-mode", request);
+        service.evaluateFeature("dark-mode", FeatureEvaluationRequest.builder().country("CO").userId("u1").build());
+        service.evaluateFeature("dark-mode", FeatureEvaluationRequest.builder().userId("u2").country("CO").build());
+
+        var stats = service.getEvaluationCacheStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+
+        snapshotHolder.update("{\"dark-mode\":{\"defaultValue\":false}}");
+        var response = service.evaluateFeature("dark-mode", request);
+        assertFalse(response.isEnabled());
+        assertEquals(client.currentSnapshot().getVersion(), response.getSnapshotVersion());
+        assertEquals(3, service.getEvaluationCacheStats().getMisses());
+    }
+
+    @Test
+    void experimentEvaluationsBypassTheCacheAndRecordEveryExposure() throws Exception {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(GrowthBookProperties.Engine.COMPILED);
+        properties.getTracking().setEnabled(true);
+        properties.getTracking().setDedupWindowSeconds(0);
+        FeatureSnapshotHolder holder = new FeatureSnapshotHolder("{\"checkout\":{\"defaultValue\":false,\"rules\":["
+                + "{\"key\":\"checkout-exp\",\"variations\":[false,true],\"weights\":[0.5,0.5],\"hashAttribute\":\"id\"}]},"
+                + "\"banner\":{\"defaultValue\":true}}", properties);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        List<ExposureEvent> exposures = new CopyOnWriteArrayList<>();
+        ExposureTracker exposureTracker = new ExposureTracker(properties, registry, exposures::addAll);
+        FeatureFlagMetrics metrics = new FeatureFlagMetrics(registry, holder, properties);
+        GrowthBookClient experimentClient = new GrowthBookClient(properties, HttpClient.newHttpClient(), holder, metrics,
+                exposureTracker);
+        FeatureFlagService experimentService = new FeatureFlagService(experimentClient,
+                new EvaluationCache(properties, holder),
+                new RefreshCoordinator(experimentClient, properties, new SharedSnapshot(properties, holder)), metrics,
+                new TenantRegistry(properties, HttpClient.newHttpClient(), metrics, exposureTracker),
+                new BootstrapPayloadCache(properties));
+        FeatureEvaluationRequest user = FeatureEvaluationRequest.builder().userId("u1").build();
+
+        assertEquals(Set.of("checkout"), holder.current().getExperimentFeatureKeys());
+        for (int i = 0; i < 3; i++) {
+            experimentService.evaluateFeature("checkout", user);
+            experimentService.evaluateFeature("banner", user);
+        }
+        exposureTracker.shutdown();
+
+        assertEquals(3, exposures.size());
+        assertTrue(exposures.stream().allMatch(exposure -> exposure.getExperimentKey().equals("checkout-exp")));
+        var stats = experimentService.getEvaluationCacheStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(2, stats.getHits());
+    }
+
+    @Test
+    void simulateCountsUsersPerRuleAndVariation() throws Exception {
+        int users = 200_000;
+        CsvUserParser parser = new CsvUserParser("userId,country,age");
+        var records = IntStream.range(0, users + 1)
+                .mapToObj(i -> i == users ? "u,CO,1,extra" : "user-" + i + "," + (i % 4 == 0 ? "CO" : "US") + "," + i % 90)
+                .iterator();
+
+        SimulationResponse response = service.simulate(records, parser, List.of("dark-mode", "new-checkout"), null);
+
+        assertEquals(users, response.getUsers());
+        assertEquals(1, response.getFailed());
+        assertEquals(snapshotHolder.current().getVersion(), response.getSnapshotVersion());
+        FeatureSimulation darkMode = response.getFeatures().get(0);
+        assertEquals(users / 4, darkMode.getOn());
+        assertEquals("defaultValue", darkMode.getOutcomes().get(0).getSource());
+        assertEquals("force", darkMode.getOutcomes().get(1).getSource());
+        FeatureSimulation rollout = response.getFeatures().get(1);
+        assertEquals(users, rollout.getOn() + rollout.getOff());
+        assertTrue(Math.abs(rollout.getOn() - users / 2) < users / 100, "rollout share: " + rollout.getOn());
+
+        // Same users against a wider rollout supplied with the request
+        var widened = FeaturePayloadLoader.load(new ByteArrayInputStream(("{\"features\":{\"new-checkout\":"
+                + "{\"defaultValue\":false,\"rules\":[{\"force\":true,\"coverage\":0.9,\"hashAttribute\":\"id\"}]}}}")
+                .getBytes(StandardCharsets.UTF_8)));
+        SimulationResponse simulated = service.simulate(
+                IntStream.range(0, users).mapToObj(i -> "user-" + i + ",US,30").iterator(),
+                parser, List.of("new-checkout"), widened);
+        assertNull(simulated.getSnapshotVersion());
+        assertTrue(simulated.getFeatures().get(0).getOn() > rollout.getOn());
+    }
+
+    @Test
+    void csvCellsThatAreNotPlainNumbersStayStrings() {
+        CsvUserParser parser = new CsvUserParser("userId,zip,account,age,score,vip,ref");
+
+        var request = parser.apply("u1,01234,1234567890123456,42,0.75,true,007.5");
+
+        assertEquals(Map.of("zip", "01234", "account", "1234567890123456", "age", 42L, "score", 0.75,
+                "vip", true, "ref", "007.5"), request.getCustomAttributes());
+    }
+
+    @Test
+    void getFeatureKeepsObjectValuesStructured() {
+        snapshotHolder.update("{\"layout\":{\"defaultValue\":{\"columns\":3,\"tags\":[\"a\",\"b\"]}}}");
+
+        var response = service.getFeature("layout");
+
+        assertTrue(response.isEnabled());
+        assertEquals("defaultValue", response.getValueSource());
+        assertNull(response.getRuleId());
+        Map<?, ?> value = assertInstanceOf(Map.class, response.getValue());
+        assertEquals(List.of("a", "b"), value.get("tags"));
+        assertEquals(3, ((Number) value.get("columns")).intValue());
+
+        var missing = service.getFeature("missing");
+        assertFalse(missing.isEnabled());
+        assertEquals("unknownFeature", missing.getValueSource());
+    }
+}
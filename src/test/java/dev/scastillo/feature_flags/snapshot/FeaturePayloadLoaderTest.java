@@ -0,0 +1,140 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeaturePayloadLoaderTest {
+
+    @Test
+    void extractsFeaturesAndHashesRawBytes() throws Exception {
+        byte[] body = "{\"status\":200,\"features\":{\"dark-mode\":{\"defaultValue\":true}},\"dateUpdated\":\"2024-01-01\"}\n"
+                .getBytes(StandardCharsets.UTF_8);
+
+        FeaturePayload payload = FeaturePayloadLoader.load(new ByteArrayInputStream(body));
+
+        assertTrue(payload.isWrapped());
+        assertEquals("{\"dark-mode\":{\"defaultValue\":true}}", payload.getFeaturesJson());
+        assertEquals(Set.of("dark-mode"), payload.getFeatures().keySet());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body)), payload.getPayloadHash());
+        assertEquals(body.length, payload.getPayloadBytes());
+    }
+
+    @Test
+    void takesWholeObjectWhenThereIsNoFeaturesKey() throws Exception {
+        FeaturePayload payload = FeaturePayloadLoader.load(new ByteArrayInputStream(
+                "{\"dark-mode\":{\"defaultValue\":true}}".getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(payload.isWrapped());
+        assertEquals(Set.of("dark-mode"), payload.getFeatures().keySet());
+    }
+
+    @Test
+    void rejectsMalformedPayload() {
+        assertThrows(JsonParseException.class, () -> FeaturePayloadLoader.load(
+                new ByteArrayInputStream("{\"features\":{\"x\":".getBytes(StandardCharsets.UTF_8))));
+        assertThrows(JsonParseException.class, () -> FeaturePayloadLoader.load(
+                new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void decryptsEncryptedFeaturesWithTheConfiguredKey() throws Exception {
+        String key = Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+        String features = "{\"dark-mode\":{\"defaultValue\":true}}";
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        Cipher aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(Base64.getDecoder().decode(key), "AES"), new IvParameterSpec(iv));
+        String encrypted = Base64.getEncoder().encodeToString(iv) + "."
+                + Base64.getEncoder().encodeToString(aes.doFinal(features.getBytes(StandardCharsets.UTF_8)));
+        byte[] body = ("{\"status\":200,\"features\":{},\"encryptedFeatures\":\"" + encrypted + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        FeaturePayload payload = FeaturePayloadLoader.load(new ByteArrayInputStream(body), FeatureCipher.forKey(key));
+
+        assertTrue(payload.isWrapped());
+        assertEquals(features, payload.getFeaturesJson());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body)), payload.getPayloadHash());
+
+        FeatureCipher cipher = FeatureCipher.forKey(key);
+        assertEquals(features, cipher.decrypt(cipher.encrypt(features)));
+        assertThrows(JsonParseException.class, () -> FeaturePayloadLoader.load(new ByteArrayInputStream(body)));
+        String otherKey = Base64.getEncoder().encodeToString("fedcba9876543210".getBytes(StandardCharsets.UTF_8));
+        // Usually a padding error; a wrong key can also decrypt to bytes that are not JSON
+        assertThrows(RuntimeException.class,
+                () -> FeaturePayloadLoader.load(new ByteArrayInputStream(body), FeatureCipher.forKey(otherKey)));
+        assertThrows(FeatureFlagException.class, () -> FeatureCipher.forKey("c2hvcnQ="));
+    }
+
+    @Test
+    void inlinesSavedGroupsIntoRuleConditions() throws Exception {
+        byte[] body = ("{\"features\":{\"beta\":{\"defaultValue\":false,\"rules\":["
+                + "{\"condition\":{\"id\":{\"$inGroup\":\"testers\"}},\"force\":true},"
+                + "{\"condition\":{\"$or\":[{\"id\":{\"$notInGroup\":\"unknown\"}}]},\"force\":true}]}},"
+                + "\"savedGroups\":{\"testers\":[\"u1\",\"u2\"]}}").getBytes(StandardCharsets.UTF_8);
+
+        FeaturePayload payload = FeaturePayloadLoader.load(new ByteArrayInputStream(body));
+
+        assertEquals("{\"beta\":{\"defaultValue\":false,\"rules\":["
+                + "{\"condition\":{\"id\":{\"$in\":[\"u1\",\"u2\"]}},\"force\":true},"
+                + "{\"condition\":{\"$or\":[{\"id\":{\"$nin\":[]}}]},\"force\":true}]}}", payload.getFeaturesJson());
+        assertEquals(JsonParser.parseString(payload.getFeaturesJson()), payload.getFeatures());
+    }
+
+    @Test
+    void streamingLoadMatchesTheParsedTree() throws Exception {
+        byte[] body = syntheticPayload(500);
+
+        FeaturePayload payload = FeaturePayloadLoader.load(new ByteArrayInputStream(body));
+
+        JsonObject tree = JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(tree.getAsJsonObject("features"), payload.getFeatures());
+        assertEquals(tree.getAsJsonObject("features"), JsonParser.parseString(payload.getFeaturesJson()));
+        assertEquals(500, payload.getFeatures().size());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body)), payload.getPayloadHash());
+        assertEquals(body.length, payload.getPayloadBytes());
+    }
+
+    @Test
+    void copiedFeaturesTextIsTheTreeSerialization() throws Exception {
+        String body = "{\"features\": {\"a\": {\"defaultValue\": 1.50, \"rules\": [{\"force\": \"<\\u00e9>\\n\", "
+                + "\"coverage\": 1e-3, \"meta\": null, \"enabled\": true}]}}}";
+
+        FeaturePayload payload = FeaturePayloadLoader.load(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(payload.getFeatures().toString(), payload.getFeaturesJson());
+    }
+
+    private static byte[] syntheticPayload(int features) {
+        StringBuilder json = new StringBuilder("{\"status\":200,\"features\":{");
+        for (int i = 0; i < features; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"feature-").append(i).append("\":{\"defaultValue\":false,\"rules\":[")
+                    .append("{\"id\":\"fr_").append(i).append("\",\"condition\":{\"country\":{\"$in\":[\"CO\",\"MX\",\"US\"]}},")
+                    .append("\"coverage\":0.5,\"hashAttribute\":\"id\",\"force\":true},")
+                    .append("{\"key\":\"exp-").append(i).append("\",\"variations\":[false,true],\"weights\":[0.5,0.5],")
+                    .append("\"hashAttribute\":\"id\",\"meta\":[{\"key\":\"0\"},{\"key\":\"1\"}]}]}");
+        }
+        return json.append("},\"dateUpdated\":\"2024-01-01T00:00:00Z\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
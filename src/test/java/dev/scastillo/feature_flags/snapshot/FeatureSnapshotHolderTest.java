@@ -0,0 +1,47 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureSnapshotHolderTest {
+
+    @Test
+    void concurrentUpdatesPublishInVersionOrder() throws InterruptedException {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.setEngine(GrowthBookProperties.Engine.COMPILED);
+        FeatureSnapshotHolder holder = new FeatureSnapshotHolder("{}", properties);
+        Set<Long> published = ConcurrentHashMap.newKeySet();
+        AtomicBoolean outOfOrder = new AtomicBoolean();
+        holder.addListener((previous, next) -> {
+            published.add(next.getVersion());
+            outOfOrder.compareAndSet(false, next.getVersion() <= previous.getVersion());
+        });
+
+        int updates = 200;
+        try (ExecutorService refreshes = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < updates; i++) {
+                // Builds of different sizes finish in a different order than they started
+                String features = "{\"f\":{\"defaultValue\":" + i + ",\"rules\":["
+                        + "{\"force\":true,\"condition\":{\"id\":\"x\"}},".repeat(i % 7 * 50) + "{\"force\":1}]}}";
+                refreshes.execute(() -> holder.update(features));
+            }
+            refreshes.shutdown();
+            assertTrue(refreshes.awaitTermination(30, TimeUnit.SECONDS));
+        }
+
+        assertEquals(updates, published.size(), "every update is published with its own version");
+        assertFalse(outOfOrder.get(), "a snapshot replaced one with a higher version");
+        assertEquals(published.stream().mapToLong(Long::longValue).max().orElseThrow(), holder.current().getVersion());
+    }
+}
@@ -0,0 +1,105 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedSnapshotTest {
+
+    private static final String FEATURES = "{\"dark-mode\":{\"defaultValue\":false}}";
+    private static final String UPDATED = "{\"dark-mode\":{\"defaultValue\":true},\"label\":{\"defaultValue\":\"ñandú\"}}";
+
+    @TempDir
+    Path directory;
+
+    private GrowthBookProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new GrowthBookProperties();
+        properties.setClientKey("sdk-test");
+        properties.getSharedSnapshot().setEnabled(true);
+        properties.getSharedSnapshot().setDirectory(directory.toString());
+        properties.getSharedSnapshot().setPollIntervalMs(10);
+        properties.getSharedSnapshot().setInitialCapacityBytes(16);
+    }
+
+    @Test
+    void fileGrowsAndReadersOnlySeeNewVersions() throws Exception {
+        Path file = directory.resolve("features.shm");
+        FeatureSnapshotHolder holder = new FeatureSnapshotHolder(FEATURES, properties);
+        try (SharedSnapshotFile writer = SharedSnapshotFile.openWriter(file, 16)) {
+            writer.write(holder.current());
+            try (SharedSnapshotFile reader = SharedSnapshotFile.openReader(file).orElseThrow()) {
+                assertEquals(FEATURES, reader.readIfChanged().orElseThrow().getFeaturesJson());
+                assertTrue(reader.readIfChanged().isEmpty());
+
+                // Larger than the mapped region: the writer grows the file, the reader remaps
+                writer.write(holder.update(UPDATED, "\"etag-2\"", null, "hash-2"));
+                PersistedFeatures published = reader.readIfChanged().orElseThrow();
+                assertEquals(UPDATED, published.getFeaturesJson());
+                assertEquals("\"etag-2\"", published.getEtag());
+                assertEquals("hash-2", published.getPayloadHash());
+            }
+        }
+    }
+
+    @Test
+    void withACipherTheSharedFeaturesAreEncrypted() throws Exception {
+        Path file = directory.resolve("features.shm");
+        FeatureCipher cipher = FeatureCipher.forKey(
+                Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.UTF_8)));
+        try (SharedSnapshotFile writer = SharedSnapshotFile.openWriter(file, 16, cipher)) {
+            writer.write(new FeatureSnapshotHolder(FEATURES, properties).current());
+        }
+
+        assertFalse(new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1).contains("dark-mode"));
+        try (SharedSnapshotFile reader = SharedSnapshotFile.openReader(file, cipher).orElseThrow()) {
+            assertEquals(FEATURES, reader.readIfChanged().orElseThrow().getFeaturesJson());
+        }
+    }
+
+    @Test
+    void followerPicksUpLeaderSnapshotsAndTakesOverWhenLeaderStops() throws Exception {
+        FeatureSnapshotHolder leaderHolder = new FeatureSnapshotHolder(FEATURES, properties);
+        SharedSnapshot leader = new SharedSnapshot(properties, leaderHolder);
+        FeatureSnapshotHolder followerHolder = new FeatureSnapshotHolder("{}", properties);
+        SharedSnapshot follower = new SharedSnapshot(properties, followerHolder);
+        try {
+            assertTrue(leader.isLeader());
+            assertTrue(follower.isFollower());
+            await(() -> FEATURES.equals(followerHolder.current().getFeaturesJson()));
+
+            leaderHolder.update(UPDATED, "\"etag-2\"", null, "hash-2");
+            await(() -> UPDATED.equals(followerHolder.current().getFeaturesJson()));
+            assertEquals("\"etag-2\"", followerHolder.current().getEtag());
+            assertEquals(UPDATED, SharedSnapshot.readPublished(properties).orElseThrow().getFeaturesJson());
+
+            leader.shutdown();
+            await(follower::isLeader);
+            assertFalse(follower.isFollower());
+        } finally {
+            leader.shutdown();
+            follower.shutdown();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dev.scastillo.feature_flags.snapshot;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SnapshotStoreTest {
+
+    private static final String FEATURES = "{\"dark-mode\":{\"defaultValue\":true},\"label\":{\"defaultValue\":\"ñandú\"}}";
+
+    @TempDir
+    Path directory;
+
+    private GrowthBookProperties properties;
+    private SnapshotStore store;
+
+    @BeforeEach
+    void setUp() {
+        properties = new GrowthBookProperties();
+        properties.setClientKey("sdk-test");
+        properties.getPersistence().setDirectory(directory.toString());
+        store = new SnapshotStore(properties);
+    }
+
+    @Test
+    void savedSnapshotLoadsBackWithValidators() {
+        FeatureSnapshotHolder holder = new FeatureSnapshotHolder(FEATURES, properties);
+        holder.update(FEATURES, "\"etag-1\"", null, "abc123");
+
+        store.save(holder.current());
+        PersistedFeatures loaded = store.load().orElseThrow();
+
+        assertEquals(FEATURES, loaded.getFeaturesJson());
+        assertEquals("\"etag-1\"", loaded.getEtag());
+        assertEquals(null, loaded.getLastModified());
+        assertEquals("abc123", loaded.getPayloadHash());
+        assertTrue(store.isRestored());
+    }
+
+    @Test
+    void snapshotDirectoryAndFileAreOwnerOnly() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        properties.getPersistence().setDirectory(directory.resolve("snapshots").toString());
+        SnapshotStore nested = new SnapshotStore(properties);
+
+        nested.save(new FeatureSnapshotHolder(FEATURES, properties).current());
+
+        Path saved = directory.resolve("snapshots");
+        assertEquals(PosixFilePermissions.fromString("rwx------"), Files.getPosixFilePermissions(saved));
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(saved.resolve("sdk-test.snapshot")));
+        assertFalse(new GrowthBookProperties().getPersistence().getDirectory()
+                .startsWith(System.getProperty("java.io.tmpdir")));
+    }
+
+    @Test
+    void withADecryptionKeyTheFeaturesAreStoredEncrypted() throws Exception {
+        properties.setDecryptionKey(Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.UTF_8)));
+        SnapshotStore encrypted = new SnapshotStore(properties);
+
+        encrypted.save(new FeatureSnapshotHolder(FEATURES, properties).current());
+
+        String onDisk = new String(Files.readAllBytes(directory.resolve("sdk-test.snapshot")), StandardCharsets.ISO_8859_1);
+        assertFalse(onDisk.contains("dark-mode"));
+        assertEquals(FEATURES, encrypted.load().orElseThrow().getFeaturesJson());
+        properties.setDecryptionKey(null);
+        assertTrue(new SnapshotStore(properties).load().isEmpty());
+    }
+
+    @Test
+    void backgroundSavesKeepTheLatestSnapshot() throws Exception {
+        FeatureSnapshotHolder holder = new FeatureSnapshotHolder(FEATURES, properties);
+        holder.addListener((previous, current) -> store.saveLater(current));
+        FeatureSnapshot older = holder.current();
+        for (int i = 0; i < 20; i++) {
+            holder.update("{\"dark-mode\":{\"defaultValue\":" + i + "}}");
+        }
+        store.saveLater(older);
+
+        store.shutdown();
+        assertEquals("{\"dark-mode\":{\"defaultValue\":19}}", store.load().orElseThrow().getFeaturesJson());
+    }
+
+    @Test
+    void restoredSnapshotIsBuiltFromTheParsedFeatures() {
+        store.save(new FeatureSnapshotHolder(FEATURES, properties).current());
+        properties.setEngine(GrowthBookProperties.Engine.COMPILED);
+
+        FeatureSnapshot restored = new FeatureSnapshotHolder(store.load().orElseThrow(), properties).current();
+
+        assertEquals(Set.of("dark-mode", "label"), restored.getFeatureKeys());
+        assertEquals("ñandú", restored.getCompiledFeatures().evaluate("label", Map.of()).getValue());
+        assertEquals(new FeatureSnapshotHolder(FEATURES, properties).current().getContentHash(), restored.getContentHash());
+    }
+
+    @Test
+    void corruptedSnapshotIsIgnored() throws Exception {
+        store.save(new FeatureSnapshotHolder(FEATURES, properties).current());
+        Path file = directory.resolve("sdk-test.snapshot");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x1;
+        Files.write(file, bytes);
+
+        assertTrue(store.load().isEmpty());
+        assertFalse(store.isRestored());
+    }
+}
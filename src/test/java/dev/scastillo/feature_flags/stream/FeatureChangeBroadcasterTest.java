@@ -0,0 +1,248 @@
+package dev.scastillo.feature_flags.stream;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.exception.FeatureFlagException;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshot;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FeatureChangeBroadcasterTest {
+
+    private static final String FEATURES = "{\"banner\":{\"defaultValue\":\"v0\"},\"dark-mode\":{\"defaultValue\":true}}";
+
+    private final GrowthBookProperties properties = new GrowthBookProperties();
+    private final FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder(FEATURES, properties);
+    private final FeatureChangeBroadcaster broadcaster = new FeatureChangeBroadcaster(
+            new GrowthBookClient(properties, HttpClient.newHttpClient(), snapshotHolder,
+                    new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                    new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { })),
+            properties, snapshotHolder) {
+        @Override
+        SseEmitter newEmitter() {
+            return new RecordingEmitter();
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.shutdown();
+    }
+
+    @Test
+    void subscriberWithoutLastEventIdGetsCurrentState() throws InterruptedException {
+        RecordingEmitter emitter = subscribe(null);
+
+        Event snapshot = emitter.next();
+        assertEquals(FeatureChangeBroadcaster.SNAPSHOT_EVENT, snapshot.name);
+        assertEquals(snapshotHolder.current().getContentHash(), snapshot.id);
+        assertEquals(2, snapshot.data.getAsJsonArray("features").size());
+        await(() -> broadcaster.getSubscriberCount() == 1);
+    }
+
+    @Test
+    void resumeSkipsStateOnlyWhenContentIsTheSame() throws InterruptedException {
+        // Another replica, or this one after a restart, has a different version but the same content hash
+        String contentHash = new FeatureSnapshotHolder(FEATURES, properties).current().getContentHash();
+        RecordingEmitter upToDate = subscribe(contentHash);
+        RecordingEmitter foreign = subscribe("999999");
+        await(() -> broadcaster.getSubscriberCount() == 2);
+
+        assertEquals(FeatureChangeBroadcaster.SNAPSHOT_EVENT, foreign.next().name);
+        broadcaster.heartbeat();
+        assertEquals("heartbeat", upToDate.next().comment);
+        assertEquals("heartbeat", foreign.next().comment);
+    }
+
+    @Test
+    void changesAreDeliveredInPublishOrder() throws InterruptedException {
+        RecordingEmitter emitter = subscribe(null);
+        emitter.next();
+        await(() -> broadcaster.getSubscriberCount() == 1);
+
+        for (int i = 1; i <= 20; i++) {
+            snapshotHolder.update("{\"banner\":{\"defaultValue\":\"v" + i + "\"},\"dark-mode\":{\"defaultValue\":true}}");
+        }
+
+        for (int i = 1; i <= 20; i++) {
+            Event changes = emitter.next();
+            assertEquals(FeatureChangeBroadcaster.CHANGES_EVENT, changes.name);
+            JsonObject banner = changes.data.getAsJsonArray("features").get(0).getAsJsonObject();
+            assertEquals("banner", banner.get("featureKey").getAsString());
+            assertEquals("v" + i, banner.get("value").getAsString());
+        }
+        assertEquals(snapshotHolder.current().getContentHash(), emitter.last.id);
+    }
+
+    @Test
+    void lateNotificationForAnOlderSnapshotIsDropped() throws InterruptedException {
+        RecordingEmitter emitter = subscribe(null);
+        emitter.next();
+        await(() -> broadcaster.getSubscriberCount() == 1);
+
+        FeatureSnapshot older = snapshotHolder.update("{\"banner\":{\"defaultValue\":\"old\"}}");
+        FeatureSnapshot newer = snapshotHolder.update("{\"banner\":{\"defaultValue\":\"new\"}}");
+        assertEquals(older.getContentHash(), emitter.next().id);
+        assertEquals(newer.getContentHash(), emitter.next().id);
+
+        broadcaster.onSnapshotPublished(newer, older);
+        broadcaster.heartbeat();
+        assertEquals("heartbeat", emitter.next().comment);
+    }
+
+    @Test
+    void completedFailedAndBrokenEmittersAreRemoved() throws InterruptedException {
+        RecordingEmitter completed = subscribe(null);
+        RecordingEmitter failed = subscribe(null);
+        RecordingEmitter broken = subscribe(null);
+        await(() -> broadcaster.getSubscriberCount() == 3);
+
+        completed.completion.run();
+        failed.error.accept(new IOException("connection reset"));
+        assertEquals(1, broadcaster.getSubscriberCount());
+
+        broken.failing = true;
+        snapshotHolder.update("{\"banner\":{\"defaultValue\":\"v1\"}}");
+        await(() -> broadcaster.getSubscriberCount() == 0);
+    }
+
+    @Test
+    void stalledSubscriberIsDroppedWithoutDelayingOthers() throws InterruptedException {
+        properties.getStream().setSubscriberQueue(2);
+        RecordingEmitter stalled = subscribe(null);
+        stalled.blocked = new CountDownLatch(1);
+        RecordingEmitter reading = subscribe(null);
+        reading.next();
+        await(() -> broadcaster.getSubscriberCount() == 2);
+
+        try {
+            // The stalled client's queue (2 events) overflows on the third change; the other keeps up
+            for (int i = 1; i <= 5; i++) {
+                snapshotHolder.update("{\"banner\":{\"defaultValue\":\"v" + i + "\"},\"dark-mode\":{\"defaultValue\":true}}");
+                assertEquals(FeatureChangeBroadcaster.CHANGES_EVENT, reading.next().name);
+            }
+            await(() -> broadcaster.getSubscriberCount() == 1);
+        } finally {
+            stalled.blocked.countDown();
+        }
+    }
+
+    @Test
+    void subscriberLimitCountsSubscribersNotYetRegistered() throws InterruptedException {
+        properties.getStream().setMaxSubscribers(2);
+        RecordingEmitter first = subscribe(null);
+        subscribe(null);
+
+        assertThrows(FeatureFlagException.class, () -> subscribe(null));
+        await(() -> broadcaster.getSubscriberCount() == 2);
+        first.completion.run();
+        assertNotNull(subscribe(null));
+        assertThrows(FeatureFlagException.class, () -> subscribe(null));
+    }
+
+    private RecordingEmitter subscribe(String lastEventId) {
+        return (RecordingEmitter) broadcaster.subscribe(lastEventId);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class Event {
+
+        private static final Pattern FIELD = Pattern.compile("^(id|event|data|):(.*)$", Pattern.MULTILINE);
+
+        private String id;
+        private String name;
+        private String comment;
+        private JsonObject data;
+
+        private Event(String text) {
+            Matcher field = FIELD.matcher(text);
+            while (field.find()) {
+                switch (field.group(1)) {
+                    case "id" -> id = field.group(2);
+                    case "event" -> name = field.group(2);
+                    case "data" -> data = JsonParser.parseString(field.group(2)).getAsJsonObject();
+                    default -> comment = field.group(2);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records events instead of writing them to a servlet response
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+        private volatile boolean failing;
+        private volatile CountDownLatch blocked;
+        private volatile Event last;
+        private Runnable completion;
+        private Consumer<Throwable> error;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("broken pipe");
+            }
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted", e);
+                }
+            }
+            events.add(new Event(builder.build().stream()
+                    .map(part -> String.valueOf(part.getData()))
+                    .collect(Collectors.joining())));
+        }
+
+        @Override
+        public void onCompletion(Runnable callback) {
+            this.completion = callback;
+        }
+
+        @Override
+        public void onError(Consumer<Throwable> callback) {
+            this.error = callback;
+        }
+
+        Event next() throws InterruptedException {
+            Event event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "no event within 5s");
+            last = event;
+            return event;
+        }
+    }
+}
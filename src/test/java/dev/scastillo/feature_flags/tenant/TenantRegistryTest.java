@@ -0,0 +1,151 @@
+package dev.scastillo.feature_flags.tenant;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.scastillo.feature_flags.client.GrowthBookClient;
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import dev.scastillo.feature_flags.metrics.FeatureFlagMetrics;
+import dev.scastillo.feature_flags.snapshot.FeatureSnapshotHolder;
+import dev.scastillo.feature_flags.tracking.ExposureTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantRegistryTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private volatile CountDownLatch fetchStarted = new CountDownLatch(0);
+    private volatile CountDownLatch releaseFetch = new CountDownLatch(0);
+    private volatile String blockedKey;
+    private HttpServer stub;
+    private GrowthBookProperties properties;
+    private TenantRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Each client key serves one feature named after the key
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/api/features/", exchange -> {
+            String clientKey = exchange.getRequestURI().getPath().substring("/api/features/".length());
+            int fetch = fetches.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            if (clientKey.equals(blockedKey)) {
+                fetchStarted.countDown();
+                try {
+                    releaseFetch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            active.decrementAndGet();
+            // Every response is new content, so each fetch publishes
+            byte[] body = ("{\"status\":200,\"features\":{\"" + clientKey + "-flag\":{\"defaultValue\":true},"
+                    + "\"fetch\":{\"defaultValue\":" + fetch + "}}}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.start();
+
+        properties = new GrowthBookProperties();
+        properties.setApiHost("http://127.0.0.1:" + stub.getAddress().getPort());
+        properties.setClientKey("sdk-default");
+        properties.getTenancy().setTenants(List.of(tenant("sdk-a"), tenant("sdk-b")));
+        properties.getTenancy().setMaxTenants(1);
+        FeatureSnapshotHolder snapshotHolder = new FeatureSnapshotHolder("{}", properties);
+        registry = new TenantRegistry(properties, HttpClient.newHttpClient(),
+                new FeatureFlagMetrics(new SimpleMeterRegistry(), snapshotHolder, properties),
+                new ExposureTracker(properties, new SimpleMeterRegistry(), batch -> { }));
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+        stub.stop(0);
+    }
+
+    @Test
+    void eachTenantServesItsOwnFeatures() {
+        GrowthBookClient a = registry.clientFor("sdk-a");
+
+        assertTrue(a.isFeatureEnabled("sdk-a-flag"));
+        assertFalse(a.isFeatureEnabled("sdk-b-flag"));
+        assertTrue(registry.isServed("sdk-default"));
+        assertFalse(registry.isServed("sdk-unknown"));
+    }
+
+    @Test
+    void leastRecentlyUsedTenantIsEvictedAndReloadedOnDemand() {
+        registry.clientFor("sdk-a");
+        registry.clientFor("sdk-b");
+        assertEquals(List.of("sdk-b"), registry.loadedClientKeys());
+
+        assertTrue(registry.clientFor("sdk-a").isFeatureEnabled("sdk-a-flag"));
+        assertEquals(List.of("sdk-a"), registry.loadedClientKeys());
+    }
+
+    @Test
+    void refreshesOfOneTenantDoNotOverlap() throws Exception {
+        registry.clientFor("sdk-a");
+        fetches.set(0);
+        releaseFetch = new CountDownLatch(1);
+        fetchStarted = new CountDownLatch(1);
+        blockedKey = "sdk-a";
+
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        requests.add(registry.refresh("sdk-a"));
+        assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            requests.add(registry.refresh("sdk-a"));
+        }
+        releaseFetch.countDown();
+        requests.forEach(CompletableFuture::join);
+
+        // The running refresh, then one follow-up for every request made during it
+        assertEquals(2, fetches.get());
+        assertEquals(1, maxActive.get());
+    }
+
+    @Test
+    void evictedTenantDoesNotPublishItsRefreshInFlight() throws Exception {
+        GrowthBookClient a = registry.clientFor("sdk-a");
+        long version = a.currentSnapshot().getVersion();
+        releaseFetch = new CountDownLatch(1);
+        fetchStarted = new CountDownLatch(1);
+        blockedKey = "sdk-a";
+
+        CompletableFuture<Void> refresh = registry.refresh("sdk-a");
+        assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+        // Loading sdk-b evicts sdk-a (max-tenants 1) while its fetch is still in flight
+        registry.clientFor("sdk-b");
+        releaseFetch.countDown();
+        refresh.join();
+
+        assertEquals(List.of("sdk-b"), registry.loadedClientKeys());
+        assertEquals(version, a.currentSnapshot().getVersion());
+    }
+
+    private static GrowthBookProperties.Tenant tenant(String clientKey) {
+        GrowthBookProperties.Tenant tenant = new GrowthBookProperties.Tenant();
+        tenant.setClientKey(clientKey);
+        return tenant;
+    }
+}
@@ -0,0 +1,143 @@
+package dev.scastillo.feature_flags.tracking;
+
+import dev.scastillo.feature_flags.config.GrowthBookProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExposureTrackerTest {
+
+    @Test
+    void repeatExposuresAreWrittenOnce() throws Exception {
+        GrowthBookProperties properties = trackingProperties(1024);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        List<ExposureEvent> written = new CopyOnWriteArrayList<>();
+        ExposureTracker tracker = new ExposureTracker(properties, registry, written::addAll);
+        tracker.start();
+
+        tracker.track(event("checkout", "user-1"));
+        tracker.track(event("checkout", "user-1"));
+        tracker.track(event("checkout", "user-2"));
+        tracker.track(event("pricing", "user-1"));
+        tracker.shutdown();
+
+        assertEquals(3, written.size());
+        assertEquals(1, registry.get("feature_flags.exposures").tag("outcome", "deduplicated").counter().count());
+        assertEquals(3, registry.get("feature_flags.exposures").tag("outcome", "written").counter().count());
+    }
+
+    @Test
+    void fullBufferDropsInsteadOfBlocking() throws Exception {
+        GrowthBookProperties properties = trackingProperties(4);
+        properties.getTracking().setBatchSize(1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CountDownLatch sinkEntered = new CountDownLatch(1);
+        CountDownLatch releaseSink = new CountDownLatch(1);
+        ExposureTracker tracker = new ExposureTracker(properties, registry, batch -> {
+            sinkEntered.countDown();
+            try {
+                releaseSink.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        tracker.start();
+
+        // The writer takes the first event and stays stuck in the sink, so the next ones pile up
+        tracker.track(event("checkout", "user-0"));
+        assertTrue(sinkEntered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 7; i++) {
+            tracker.track(event("checkout", "user-" + i));
+        }
+
+        assertEquals(4, tracker.queueDepth());
+        assertEquals(3, registry.get("feature_flags.exposures").tag("outcome", "dropped").counter().count());
+        assertEquals(4, registry.get("feature_flags.exposures.queue").gauge().value());
+
+        releaseSink.countDown();
+        tracker.shutdown();
+        assertEquals(5, registry.get("feature_flags.exposures").tag("outcome", "written").counter().count());
+    }
+
+    @Test
+    void droppedExposuresAreNotDeduplicated() throws Exception {
+        GrowthBookProperties properties = trackingProperties(4);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        List<ExposureEvent> written = new CopyOnWriteArrayList<>();
+        ExposureTracker tracker = new ExposureTracker(properties, registry, written::addAll);
+
+        // Not started yet: nothing drains, so the fifth exposure is dropped
+        for (int i = 0; i < 5; i++) {
+            tracker.track(event("checkout", "user-" + i));
+        }
+        assertEquals(1, registry.get("feature_flags.exposures").tag("outcome", "dropped").counter().count());
+
+        tracker.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (tracker.queueDepth() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        tracker.track(event("checkout", "user-4"));
+        tracker.shutdown();
+
+        assertEquals(5, written.size());
+        assertEquals(0, registry.get("feature_flags.exposures").tag("outcome", "deduplicated").counter().count());
+    }
+
+    @Test
+    void ringBufferHandsEveryElementOverOnceUnderContention() throws Exception {
+        ExposureRingBuffer<Integer> ring = new ExposureRingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+
+        ExposureRingBuffer<Integer> shared = new ExposureRingBuffer<>(1 << 16);
+        int producers = 4;
+        int perProducer = 10_000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            pool.submit(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    shared.offer(i);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        AtomicInteger drained = new AtomicInteger();
+        while (shared.poll() != null) {
+            drained.incrementAndGet();
+        }
+        assertEquals(producers * perProducer, drained.get());
+        assertNull(shared.poll());
+    }
+
+    private static GrowthBookProperties trackingProperties(int capacity) {
+        GrowthBookProperties properties = new GrowthBookProperties();
+        properties.getTracking().setEnabled(true);
+        properties.getTracking().setBufferCapacity(capacity);
+        properties.getTracking().setFlushIntervalMs(10);
+        return properties;
+    }
+
+    private static ExposureEvent event(String experimentKey, String userId) {
+        return new ExposureEvent(experimentKey, 1, experimentKey, "id", userId, System.currentTimeMillis());
+    }
+}